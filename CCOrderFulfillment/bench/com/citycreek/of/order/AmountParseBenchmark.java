@@ -0,0 +1,126 @@
+package com.citycreek.of.order;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.cjc.util.Money;
+import com.cjc.util.PropertiesUtil;
+
+/**
+ * JMH comparison of the amounts {@link Order} parses once as they are added with the Double.valueOf on every getter
+ * call they replaced; both store the amount and read it back as the exporters do. The bench folder isn't a source
+ * folder of the project and isn't part of the jar.
+ * <p>
+ * Setup first checks that the {@link Money} value of every amount is exactly the double Double.valueOf gives and
+ * prints as Double.toString printed it, and fails if not.
+ * <p>
+ * Run with jmh-core and jmh-generator-annprocess on the class path, after compiling src:
+ *
+ * <pre>
+ * javac -cp bin:jmh-core.jar:jmh-generator-annprocess.jar -d bench-bin bench/com/citycreek/of/order/*.java
+ * java -cp bin:bench-bin:jmh-core.jar:jopt-simple.jar:commons-math3.jar org.openjdk.jmh.Main AmountParseBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AmountParseBenchmark {
+
+	private static final String KEY = "PaymentAmount";
+
+	@Param({ "10000" })
+	public int count;
+
+	/** Getter calls per order, across the exporters. */
+	@Param({ "1", "3" })
+	public int reads;
+
+	private String[] amounts;
+	private PropertiesUtil[] bags;
+	private Order[] orders;
+
+	@Setup
+	public void setup() {
+		this.amounts = amounts(this.count);
+		this.bags = new PropertiesUtil[this.count];
+		this.orders = new Order[this.count];
+		for (int i = 0; i < this.count; i++) {
+			this.bags[i] = new PropertiesUtil();
+			this.orders[i] = new Order();
+			check(this.amounts[i]);
+		}
+	}
+
+	@Benchmark
+	public void doubleValueOfOnEachRead(Blackhole blackhole) {
+		for (int i = 0; i < this.count; i++) {
+			this.bags[i].setProperty(KEY, this.amounts[i]);
+			for (int r = 0; r < this.reads; r++) {
+				blackhole.consume(this.bags[i].getOptionalDouble(KEY));
+			}
+		}
+	}
+
+	@Benchmark
+	public void moneyParsedOnceOnAdd(Blackhole blackhole) {
+		for (int i = 0; i < this.count; i++) {
+			this.orders[i].add(KEY, this.amounts[i]);
+			for (int r = 0; r < this.reads; r++) {
+				blackhole.consume(this.orders[i].getPaymentAmount());
+			}
+		}
+	}
+
+	private static void check(String amount) {
+		final long money = Order.parseAmount(KEY, amount);
+		final double expected = Double.valueOf(amount.trim());
+		if ((Money.toDouble(money) != expected) || !Money.toString(money).equals(Double.toString(expected))) {
+			throw new IllegalStateException("Amount differs, " + amount + ": " + Money.toString(money) + " != "
+					+ expected);
+		}
+	}
+
+	/**
+	 * @return amounts with 4 decimals, mostly prices but some large, negative or zero
+	 */
+	private static String[] amounts(int count) {
+		final Random random = new Random(42);
+		final String[] amounts = new String[count];
+		for (int i = 0; i < count; i++) {
+			final long units;
+			switch (i % 4) {
+			case 0:
+				units = random.nextInt(100000) * 100L; // cents
+				break;
+			case 1:
+				units = random.nextInt(10000000);
+				break;
+			case 2:
+				units = -random.nextInt(100000000);
+				break;
+			default:
+				units = (long) (random.nextDouble() * 1e12);
+				break;
+			}
+			amounts[i] = BigDecimal.valueOf(units, Money.SCALE).toPlainString();
+		}
+		return amounts;
+	}
+}
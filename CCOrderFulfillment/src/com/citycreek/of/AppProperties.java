@@ -11,11 +11,29 @@ public interface AppProperties {
 	String XML_ORDER_FILE = "xml.order.file";
 	String XML_CUSTOMER_URL = "xml.customer.url";
 	String XML_ORDER_URL = "xml.order.url";
+	String XML_PARSER = "xml.parser"; // dom, stream, parallel or mapped
+	String XML_INCREMENTAL = "xml.incremental";
+	String XML_CUSTOMER_SNAPSHOT = "xml.customer.snapshot";
+	String XML_CUSTOMER_ON_DEMAND = "xml.customer.ondemand";
+	String XML_DOWNLOAD_TEE = "xml.download.tee";
+	String XML_CONCURRENT = "xml.concurrent";
+	String XML_COMPRESS = "xml.compress";
+	String XML_ORDER_PAGE_FROM = "xml.order.page.from"; // yyyy-MM-dd
+	String XML_ORDER_PAGE_TO = "xml.order.page.to"; // yyyy-MM-dd
+	String XML_ORDER_PAGE_COLUMN = "xml.order.page.column";
+	String XML_ORDER_PAGE_FORMAT = "xml.order.page.format";
+	String XML_ORDER_PAGE_THREADS = "xml.order.page.threads";
 
 	// SHIPPING CSV
 	String ORDER_FULFILLMENT_DIR = "order.fulfillment.dir";
 	String SHIPPING_EXCLUDED_PRODUCTS = "excluded.products";
 	String SHIPPING_METHOD_MAP = "csv.ShipMethodMap";
+	String PAYMENT_METHOD_MAP = "csv.PaymentMethodMap";
+
+	// DUPLICATES
+	String DUPLICATE_ID_WINDOW = "duplicate.window.ids";
+	String DUPLICATE_TIME_WINDOW = "duplicate.window.minutes";
+	String DUPLICATE_HISTORY_FILE = "duplicate.history.file";
 
 	// QUICKBOOKS
 	String QUICKBOOKS_IIF_DIR = "quickbooks.iif.dir";
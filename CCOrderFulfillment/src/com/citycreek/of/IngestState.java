@@ -0,0 +1,62 @@
+package com.citycreek.of;
+
+import java.io.File;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import com.cjc.util.PropertiesUtil;
+
+/**
+ * What the last incremental run processed; the highest OrderID and the checksum of the order file. Kept in a small
+ * properties file in the xml directory.
+ */
+public class IngestState {
+
+	private static final Logger log = Logger.getLogger(IngestState.class.getName());
+
+	private static final String FILENAME = "ingest_state.properties";
+
+	private static final String ORDER_HIGH_WATER = "order.highwater";
+	private static final String ORDER_CHECKSUM = "order.checksum";
+
+	private final File file;
+	private final PropertiesUtil state = new PropertiesUtil(new Properties());
+
+	public IngestState(String xmlDir) {
+		this.file = new File(xmlDir, FILENAME);
+		this.state.load(this.file, false);
+		log.config("Ingest state, file=" + this.file + ", " + this.state.getProperties());
+	}
+
+	/**
+	 * @return the highest OrderID processed so far, 0 if none
+	 */
+	public long getOrderHighWater() {
+		return this.state.getOptionalLong(ORDER_HIGH_WATER, 0L);
+	}
+
+	/**
+	 * @return the checksum of the last order file processed, NULL if none
+	 */
+	public String getOrderChecksum() {
+		return this.state.getOptional(ORDER_CHECKSUM);
+	}
+
+	public void setOrderChecksum(String checksum) {
+		this.state.setProperty(ORDER_CHECKSUM, checksum);
+	}
+
+	/**
+	 * Raise the high-water mark; it never goes down.
+	 */
+	public void setOrderHighWater(long orderId) {
+		if (orderId > this.getOrderHighWater()) {
+			this.state.setProperty(ORDER_HIGH_WATER, Long.toString(orderId));
+		}
+	}
+
+	public void save() {
+		PropertiesUtil.save(this.file, this.state.getProperties(), "CityCreek Order Fulfillment - incremental state");
+		log.info("Ingest state saved, file=" + this.file + ", " + this.state.getProperties());
+	}
+}
@@ -1,43 +1,76 @@
 package com.citycreek.of;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.net.URL;
+import java.net.URLEncoder;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.text.MessageFormat;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
 import java.util.stream.Collectors;
 
 import com.citycreek.of.customer.Customer;
+import com.citycreek.of.customer.CustomerSnapshot;
 import com.citycreek.of.customer.CustomerXmlTransformer;
 import com.citycreek.of.exporter.OrderFulfillmentExporter;
 import com.citycreek.of.exporter.QuickBooksIIFExporter;
 import com.citycreek.of.exporter.QuickBooksTableImportExporter;
+import com.citycreek.of.order.DuplicateDetector;
+import com.citycreek.of.order.Enrichment;
 import com.citycreek.of.order.Order;
 import com.citycreek.of.order.OrderDetail;
+import com.citycreek.of.order.OrderHistory;
 import com.citycreek.of.order.OrderXmlTransformer;
+import com.citycreek.of.order.ProductCatalog;
+import com.citycreek.of.order.ReferenceData;
 import com.cjc.util.AppUtil;
 import com.cjc.util.Format42;
+import com.cjc.util.IOUtil;
 import com.cjc.util.LangUtil;
+import com.cjc.util.LongHashMap;
+import com.cjc.util.LongHashSet;
 import com.cjc.util.PropertiesUtil;
+import com.cjc.util.TeeInputStream;
+import com.cjc.util.xml.XmlTool;
 
 public class VolusionExtractor {
 
 	private static final String XML_DIR = "xml";
 
+	private static final String XML_PARSER_DOM = "dom";
+	private static final String XML_PARSER_STREAM = "stream";
+	private static final String XML_PARSER_PARALLEL = "parallel";
+	private static final String XML_PARSER_MAPPED = "mapped";
+
 	private static final String QUICKBOOKS_DIR = "quickbooks";
 
+	/** The day of the OrderDate, without the time, as SQL Server style 101 (MM/dd/yyyy). */
+	private static final String PAGE_COLUMN = "CONVERT(varchar(10), o.OrderDate, 101)";
+	private static final String PAGE_FORMAT = "MM/dd/yyyy";
+
+	/** Rough size of one customer in the xml, to size the customer index from the file. */
+	private static final int CUSTOMER_XML_BYTES = 256;
+
 	private static final Logger log = Logger.getLogger(VolusionExtractor.class.getName());
 
 	private static final String VERSION = "v2.0.2 - 29 January 2017";
@@ -48,22 +81,40 @@ public class VolusionExtractor {
 	private static String password;
 	private static PropertiesUtil props = new PropertiesUtil();
 	private static List<Order> orders = new ArrayList<Order>();
-	private static Map<String, Customer> customers = new HashMap<>();
+	private static LongHashMap<Customer> customers = new LongHashMap<>();
+	private static IngestState ingestState;
+	private static CustomerSnapshot customerSnapshot;
+	private static OrderHistory orderHistory;
 
 	public static void main(String[] args) {
 		try {
 			setup(args);
-			readCustomerXml();
-			readOrderXml();
+			if (isCustomersOnDemand()) {
+				// Orders first so only the customers they reference are read.
+				readOrderXml();
+				if (!orders.isEmpty()) {
+					readCustomerXml();
+				}
+			} else if (props.getOptionalBoolean(AppProperties.XML_CONCURRENT, false)) {
+				readXmlConcurrently();
+			} else {
+				readCustomerXml();
+				readOrderXml();
+			}
 			if (!orders.isEmpty()) {
-				orders.forEach(VolusionExtractor::associateCustomerToOrder);
-				orders.forEach(Order::addShipDetail);
-				final List<String> removeDuplicates = removeDuplicatesOrCancelledOrders();
-
-				// writeQuickBooksIFF(true);
-				writeQuickBooksIFF(false);
-				writeQuickBooksCSV();
-				writeOrderFulfillment();
+				new Enrichment() //
+						.then(VolusionExtractor::associateCustomerToOrder) //
+						.then(Order::addShipDetail) //
+						.run(orders) //
+						.stream() //
+						.filter(ReferenceData.get()::isFirstReport) //
+						.forEach(VolusionExtractor::warn);
+				final DuplicateDetector duplicates = newDuplicateDetector();
+				final List<String> removeDuplicates = duplicates.removeDuplicatesOrCancelled(orders);
+				orders.forEach(Order::freeze);
+
+				writeExports();
+				duplicates.recordHistory();
 
 				// Print dups at the end.
 				if (!removeDuplicates.isEmpty()) {
@@ -78,9 +129,16 @@ public class VolusionExtractor {
 			} else {
 				info("No orders found - no files written.");
 			}
+			if (ingestState != null) {
+				ingestState.save();
+			}
 		} catch (Throwable e) {
 			info("Unknown serious error", e);
+		} finally {
+			closeOrderHistory();
 		}
+		log.fine("XML parsing: " + XmlTool.getStats());
+		log.fine("Product catalog: " + ProductCatalog.get().size() + " products");
 		info("*************************************************************************");
 		info(orders.size() + " order(s) processed - " + //
 				orders.stream().map(Order::getOrderID).sorted().collect(Collectors.toList()));
@@ -144,7 +202,16 @@ public class VolusionExtractor {
 		// Read password from file
 		password = new String(Files.readAllBytes(Paths.get("password.txt")));
 
-		Order.loadShippingMethodMap(props);
+		if (props.getOptionalBoolean(AppProperties.XML_INCREMENTAL, false)) {
+			ingestState = new IngestState(props.getOptional(AppProperties.XML_DIR, XML_DIR));
+		}
+
+		final String historyFile = props.getOptional(AppProperties.DUPLICATE_HISTORY_FILE);
+		if (LangUtil.hasValue(historyFile)) {
+			orderHistory = OrderHistory.open(new File(historyFile));
+		}
+
+		ReferenceData.load(props);
 		OrderDetail.loadShippingExcludedProducts(props);
 
 		info("*************************************************************************");
@@ -156,12 +223,62 @@ public class VolusionExtractor {
 		log.config("*************************************************************************");
 	}
 
-	public static void associateCustomerToOrder(Order o) {
+	/**
+	 * An {@link Enrichment.Step}; the customers are only read here, from several threads.
+	 */
+	public static void associateCustomerToOrder(Order o, List<String> warnings) {
 		String customerId = o.getCustomerID();
-		if (LangUtil.hasValue(customerId) && customers.containsKey(customerId)) {
-			o.setCustomer(customers.get(customerId));
+		final Customer customer = LangUtil.hasValue(customerId) ? findCustomer(customerId) : null;
+		if (customer != null) {
+			o.setCustomer(customer);
 		} else {
-			warn("No customer found for order=" + customerId + ". Order will be skipped. Manually process order.");
+			warnings.add("No customer found for order=" + o.getOrderID() + ", customer=" + customerId
+					+ ". Order will be skipped. Manually process order.");
+		}
+	}
+
+	private static Customer findCustomer(String customerId) {
+		if (customerSnapshot != null) {
+			return customerSnapshot.get(customerId);
+		}
+		try {
+			return customers.get(Long.parseLong(customerId.trim()));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Fetch and parse the customers and the orders at the same time, joining both before orders are associated to
+	 * customers. A customer failure is reported first; it still aborts the run.
+	 */
+	private static void readXmlConcurrently() throws Exception {
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			final Future<?> customerXml = executor.submit(() -> {
+				readCustomerXml();
+				return null;
+			});
+			final Future<?> orderXml = executor.submit(() -> {
+				readOrderXml();
+				return null;
+			});
+			join(customerXml);
+			join(orderXml);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static <T> T join(Future<T> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			throw (Error) cause;
 		}
 	}
 
@@ -173,7 +290,7 @@ public class VolusionExtractor {
 			info("  Read from file, " + xmlFile);
 			final File file = new File(xmlFile);
 			if (file.length() > 0) {
-				new OrderXmlTransformer().fromXml(file, orders);
+				parseOrderXml(file);
 			}
 		} else {
 			readOrdersFromUrl();
@@ -188,12 +305,12 @@ public class VolusionExtractor {
 			info("  Read from file, " + xmlFile);
 			final File file = new File(xmlFile);
 			if (file.length() > 0) {
-				new CustomerXmlTransformer().fromXml(file, customers);
+				parseCustomerXml(file);
 			}
 		} else {
 			readCustomersFromUrl();
 		}
-		if (customers.isEmpty()) {
+		if (customers.isEmpty() && ((customerSnapshot == null) || (customerSnapshot.size() == 0))) {
 			throw new RuntimeException("NO CUSTOMERS - check the API password file.");
 		}
 	}
@@ -209,20 +326,185 @@ public class VolusionExtractor {
 			xmlUrl = MessageFormat.format(urlProperty, username, password, columns);
 			info("  Read ORDERS from URL, " + urlProperty);
 		}
+		if (LangUtil.hasValue(props.getOptional(AppProperties.XML_ORDER_PAGE_FROM))) {
+			readOrderPagesFromUrl(xmlUrl);
+			return;
+		}
 		// Output filename
 		final Path xmlFile = Paths.get(//
-				props.getOptional(AppProperties.XML_DIR, XML_DIR) + "/" + DATETIME + "_order.xml");
+				props.getOptional(AppProperties.XML_DIR, XML_DIR) + "/" + archiveName(DATETIME + "_order.xml"));
 		info("  Write to file, " + xmlFile);
 		Files.createDirectories(xmlFile.getParent());
 
-		// Read in the orders from Volution.
-		try (InputStream in = new URL(xmlUrl).openStream()) {
-			Files.copy(in, xmlFile, StandardCopyOption.REPLACE_EXISTING);
+		if (isDownloadTee()) {
+			final OrderXmlTransformer transformer = newOrderXmlTransformer();
+			downloadAndParse(xmlUrl, xmlFile, in -> transformer.fromXmlStream(in, orders::add));
+			if (ingestState != null) {
+				recordIngestState(IOUtil.checksum(xmlFile));
+			}
+			return;
 		}
 
+		// Read in the orders from Volution.
+		final long bytes = download(xmlUrl, xmlFile);
+
 		log.fine("  Parsing XML file...");
-		if (xmlFile.toFile().length() > 0) {
-			new OrderXmlTransformer().fromXml(xmlFile.toFile(), orders);
+		if (bytes > 0) {
+			parseOrderXml(xmlFile.toFile());
+		}
+	}
+
+	/**
+	 * Fetch the orders a day at a time over the requested date range, a bounded number of days in parallel. Each page
+	 * is parsed as it arrives and archived as its own file; the pages are merged by OrderID.
+	 * <p>
+	 * WHERE_Value is matched exactly, so the column has to give the day alone: OrderDate itself holds the time too and
+	 * would never match. The default column is the OrderDate converted to its date, MM/dd/yyyy.
+	 */
+	private static void readOrderPagesFromUrl(String xmlUrl) throws Exception {
+		final LocalDate from = LocalDate.parse(props.getRequired(AppProperties.XML_ORDER_PAGE_FROM));
+		final String to = props.getOptional(AppProperties.XML_ORDER_PAGE_TO);
+		final LocalDate last = LangUtil.hasValue(to) ? LocalDate.parse(to) : LocalDate.now();
+		final String column = props.getOptional(AppProperties.XML_ORDER_PAGE_COLUMN, PAGE_COLUMN);
+		final DateTimeFormatter format = DateTimeFormatter
+				.ofPattern(props.getOptional(AppProperties.XML_ORDER_PAGE_FORMAT, PAGE_FORMAT));
+		final int threads = props.getOptionalInt(AppProperties.XML_ORDER_PAGE_THREADS, 4);
+		final Path xmlDir = Paths.get(props.getOptional(AppProperties.XML_DIR, XML_DIR));
+		info("  Paged by " + column + " from " + from + " to " + last + ", " + threads + " at a time");
+		Files.createDirectories(xmlDir);
+
+		final OrderXmlTransformer transformer = newOrderXmlTransformer();
+		final List<LocalDate> days = new ArrayList<>();
+		final List<Future<List<Order>>> pages = new ArrayList<>();
+		final Map<Long, Order> merged = new TreeMap<>();
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (LocalDate day = from; !day.isAfter(last); day = day.plusDays(1)) {
+				final String pageUrl = xmlUrl + "&WHERE_Column=" + URLEncoder.encode(column, "UTF-8")
+						+ "&WHERE_Value=" + URLEncoder.encode(format.format(day), "UTF-8");
+				final Path pageFile = xmlDir.resolve(
+						archiveName(DATETIME + "_order_" + DateTimeFormatter.BASIC_ISO_DATE.format(day) + ".xml"));
+				days.add(day);
+				pages.add(executor.submit(() -> {
+					final List<Order> page = new ArrayList<>();
+					downloadAndParse(pageUrl, pageFile, in -> transformer.fromXmlStream(in, page::add));
+					log.fine("  Page " + pageFile + ", orders=" + page.size());
+					return page;
+				}));
+			}
+			for (int i = 0; i < pages.size(); i++) {
+				final List<Order> page = join(pages.get(i));
+				if (page.isEmpty()) {
+					warn("No orders for " + days.get(i) + " - check " + AppProperties.XML_ORDER_PAGE_COLUMN + " and "
+							+ AppProperties.XML_ORDER_PAGE_FORMAT + " if orders were expected.");
+				}
+				for (Order order : page) {
+					merged.putIfAbsent(order.getOrderID(), order);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		orders.addAll(merged.values());
+		info("  Read " + orders.size() + " orders from " + pages.size() + " pages");
+
+		if (ingestState != null) {
+			orders.stream().mapToLong(Order::getOrderID).max().ifPresent(ingestState::setOrderHighWater);
+		}
+	}
+
+	/**
+	 * @return the number of bytes downloaded, before any compression
+	 */
+	private static long download(String xmlUrl, Path xmlFile) throws IOException {
+		try (InputStream in = new URL(xmlUrl).openStream(); OutputStream out = newArchiveOutputStream(xmlFile)) {
+			return IOUtil.copy(in, out);
+		}
+	}
+
+	/**
+	 * Downloads are gzipped as they are written when compressing; the readers detect it by the magic bytes.
+	 */
+	private static boolean isCompressDownloads() {
+		return props.getOptionalBoolean(AppProperties.XML_COMPRESS, false);
+	}
+
+	private static String archiveName(String name) {
+		return isCompressDownloads() ? (name + ".gz") : name;
+	}
+
+	private static OutputStream newArchiveOutputStream(Path xmlFile) throws IOException {
+		final OutputStream out = Files.newOutputStream(xmlFile);
+		return isCompressDownloads() ? new GZIPOutputStream(out, 64 * 1024) : out;
+	}
+
+	/**
+	 * Download straight into the parser, writing the same bytes to the file as they arrive. Whatever the parser leaves
+	 * unread is still written, the file is the complete response. An empty response is not parsed.
+	 */
+	private static void downloadAndParse(String xmlUrl, Path xmlFile, StreamParser parser) throws Exception {
+		try (PushbackInputStream in = new PushbackInputStream(new BufferedInputStream(
+				new TeeInputStream(new URL(xmlUrl).openStream(), newArchiveOutputStream(xmlFile)), 64 * 1024))) {
+			final int first = in.read();
+			if (first != -1) {
+				in.unread(first);
+				log.fine("  Parsing XML download...");
+				parser.parse(in);
+			}
+		}
+	}
+
+	/**
+	 * Parse the downloads while they are written instead of after; always uses the stream parser.
+	 */
+	private static boolean isDownloadTee() {
+		return props.getOptionalBoolean(AppProperties.XML_DOWNLOAD_TEE, false);
+	}
+
+	private static OrderXmlTransformer newOrderXmlTransformer() {
+		final OrderXmlTransformer transformer = new OrderXmlTransformer();
+		if (ingestState != null) {
+			info("  Incremental, skipping orders through OrderID " + ingestState.getOrderHighWater());
+			transformer.skipOrdersThrough(ingestState.getOrderHighWater());
+		}
+		return transformer;
+	}
+
+	/**
+	 * @param checksum of the order file read
+	 */
+	private static void recordIngestState(String checksum) {
+		ingestState.setOrderChecksum(checksum);
+		orders.stream().mapToLong(Order::getOrderID).max().ifPresent(ingestState::setOrderHighWater);
+	}
+
+	private static void parseOrderXml(File file) throws Exception {
+		// Read once, for the unchanged check and to be recorded
+		final String checksum = (ingestState != null) ? IOUtil.checksum(file.toPath()) : null;
+		if ((checksum != null) && checksum.equals(ingestState.getOrderChecksum())) {
+			info("  Order file unchanged since the last run, nothing new to process.");
+			return;
+		}
+		final OrderXmlTransformer transformer = newOrderXmlTransformer();
+
+		final String parser = props.getOptional(AppProperties.XML_PARSER, XML_PARSER_DOM);
+		switch (parser) {
+		case XML_PARSER_STREAM:
+			transformer.fromXmlStream(file, orders);
+			break;
+		case XML_PARSER_PARALLEL:
+			transformer.fromXmlParallel(file, orders);
+			break;
+		case XML_PARSER_MAPPED:
+			transformer.fromXmlMapped(file, orders);
+			break;
+		default:
+			transformer.fromXml(file, orders);
+			break;
+		}
+
+		if (checksum != null) {
+			recordIngestState(checksum);
 		}
 	}
 
@@ -238,98 +520,172 @@ public class VolusionExtractor {
 		}
 		// Output filename
 		final Path xmlFile = Paths.get(//
-				props.getOptional(AppProperties.XML_DIR, XML_DIR) + "/customers.xml");
+				props.getOptional(AppProperties.XML_DIR, XML_DIR) + "/" + archiveName("customers.xml"));
 		info("  Write to file, " + xmlFile);
 		Files.createDirectories(xmlFile.getParent());
 
-		// Read in the orders from Volution.
-		try (InputStream in = new URL(xmlUrl).openStream()) {
-			Files.copy(in, xmlFile, StandardCopyOption.REPLACE_EXISTING);
+		// The snapshot is keyed by the checksum of the whole file, that needs the download first.
+		if (isDownloadTee() && !props.getOptionalBoolean(AppProperties.XML_CUSTOMER_SNAPSHOT, false)) {
+			final CustomerXmlTransformer transformer = newCustomerXmlTransformer();
+			downloadAndParse(xmlUrl, xmlFile,
+					in -> transformer.fromXmlStream(in, c -> CustomerXmlTransformer.put(customers, c)));
+			return;
 		}
+
+		// Read in the orders from Volution.
+		final long bytes = download(xmlUrl, xmlFile);
 		log.fine("  Parsing XML file...");
-		if (xmlFile.toFile().length() > 0) {
-			new CustomerXmlTransformer().fromXml(xmlFile.toFile(), customers);
+		if (bytes > 0) {
+			parseCustomerXml(xmlFile.toFile());
 		}
 	}
 
-	private static List<String> removeDuplicatesOrCancelledOrders() {
-		// For each order, look to see if the current order is the same as the previous.
-		final List<Long> removals = new ArrayList<>();
-		final List<String> removalLogs = new ArrayList<>();
+	/**
+	 * Only the customers referenced by orders are read; not used with the snapshot, which needs every customer.
+	 */
+	private static boolean isCustomersOnDemand() {
+		return props.getOptionalBoolean(AppProperties.XML_CUSTOMER_ON_DEMAND, false)
+				&& !props.getOptionalBoolean(AppProperties.XML_CUSTOMER_SNAPSHOT, false);
+	}
 
-		Order prevOrder = null;
-		for (Order order : orders) {
-			if (order.isCancelled()) {
-				removals.add(order.getOrderID());
-				removalLogs.add(order.getCustomerName() //
-						+ " :: " + order.getOrderID() + " - cancelled");
-				continue;
-			}
-			if (order.getCustomer() == null) {
-				removals.add(order.getOrderID());
-				removalLogs.add(order.getCustomerID() //
-						+ " :: " + order.getOrderID() + " - unknown customer");
-				continue;
-			}
-			if (prevOrder == null) {
-				prevOrder = order;
-				continue; // skip first one
+	/**
+	 * @return a transformer limited to the customers referenced by orders when on demand
+	 */
+	private static CustomerXmlTransformer newCustomerXmlTransformer() {
+		final CustomerXmlTransformer transformer = new CustomerXmlTransformer();
+		if (isCustomersOnDemand()) {
+			final LongHashSet customerIds = new LongHashSet(orders.size());
+			for (Order order : orders) {
+				try {
+					customerIds.add(Long.parseLong(order.getCustomerID()));
+				} catch (RuntimeException e) {
+					// no customer to find, reported when associated
+				}
 			}
+			info("  Reading the " + customerIds.size() + " customers referenced by orders");
+			transformer.onlyCustomers(customerIds);
+		}
+		return transformer;
+	}
 
-			if (prevOrder.isDuplicate(order)) {
-				removals.add(order.getOrderID());
-				removalLogs.add(prevOrder.getCustomerName() //
-						+ " :: " + prevOrder.getOrderID() + " = " + order.getOrderID() + " - duplicate");
+	private static void parseCustomerXml(File file) throws Exception {
+		if (customers.isEmpty()) {
+			customers = new LongHashMap<>((int) Math.min(Integer.MAX_VALUE, file.length() / CUSTOMER_XML_BYTES));
+		}
+		if (isCustomersOnDemand()) {
+			newCustomerXmlTransformer().fromXmlStream(file, customers);
+		} else if (props.getOptionalBoolean(AppProperties.XML_CUSTOMER_SNAPSHOT, false)) {
+			final String checksum = IOUtil.checksum(file.toPath());
+			final File snapshotFile = CustomerSnapshot.getFile(file);
+			customerSnapshot = CustomerSnapshot.open(snapshotFile, checksum);
+			if (customerSnapshot != null) {
+				info("  Customers unchanged, using snapshot of " + customerSnapshot.size() + " customers");
+				return;
 			}
+			parseCustomerXml(file, props.getOptional(AppProperties.XML_PARSER, XML_PARSER_DOM));
+			CustomerSnapshot.write(snapshotFile, checksum, customers.values());
+		} else {
+			parseCustomerXml(file, props.getOptional(AppProperties.XML_PARSER, XML_PARSER_DOM));
+		}
+	}
 
-			prevOrder = order;
-		} // for each order
+	private static void parseCustomerXml(File file, String parser) throws Exception {
+		switch (parser) {
+		case XML_PARSER_STREAM:
+		case XML_PARSER_PARALLEL: // customers are streamed, only orders are split
+			new CustomerXmlTransformer().fromXmlStream(file, customers);
+			break;
+		case XML_PARSER_MAPPED:
+			new CustomerXmlTransformer().fromXmlMapped(file, customers);
+			break;
+		default:
+			new CustomerXmlTransformer().fromXml(file, customers);
+			break;
+		}
+	}
 
-		// Remove orders
-		orders.removeIf(order -> removals.contains(order.getOrderID()));
+	private static DuplicateDetector newDuplicateDetector() {
+		final DuplicateDetector detector = new DuplicateDetector( //
+				props.getOptionalInt(AppProperties.DUPLICATE_ID_WINDOW, 1), //
+				props.getOptionalLong(AppProperties.DUPLICATE_TIME_WINDOW, 0));
+		return (orderHistory != null) ? detector.withHistory(orderHistory) : detector;
+	}
 
-		return removalLogs;
+	private static void closeOrderHistory() {
+		if (orderHistory != null) {
+			try {
+				orderHistory.close();
+			} catch (IOException e) {
+				info("Unable to save the order history", e);
+			}
+			orderHistory = null;
+		}
 	}
 
-	private static Path writeQuickBooksIFF(boolean writeOrders) throws IOException {
-		info("Creating QuickBooks IIF file...");
-		Path parentPath = Paths.get(props.getOptional(AppProperties.QUICKBOOKS_IIF_DIR, QUICKBOOKS_DIR));
+	/**
+	 * Stream the exports from the frozen orders at the same time, each exporter on its own thread and to its own
+	 * temporary file. The files are only written once all exports are finished, in a fixed order; if any export fails
+	 * none is written.
+	 */
+	private static void writeExports() throws Exception {
+		final Path iifPath = Paths.get(props.getOptional(AppProperties.QUICKBOOKS_IIF_DIR, QUICKBOOKS_DIR));
+		final Path csvPath = Paths.get(props.getOptional(AppProperties.QUICKBOOKS_CSV_DIR, QUICKBOOKS_DIR));
+		final Path fulfillmentPath = Paths
+				.get(props.getOptional(AppProperties.ORDER_FULFILLMENT_DIR, ORDER_FULFILLMENT_DIR));
+
+		// new QuickBooksIIFExporter(iifPath, true) to write the orders too
+		try (QuickBooksIIFExporter iifExporter = new QuickBooksIIFExporter(iifPath, false);
+				QuickBooksTableImportExporter csvExporter = new QuickBooksTableImportExporter(csvPath);
+				OrderFulfillmentExporter fulfillmentExporter = new OrderFulfillmentExporter(fulfillmentPath)) {
+			final ExecutorService executor = Executors.newFixedThreadPool(3);
+			try {
+				final Future<?> iif = executor.submit(() -> iifExporter.exportOrders(orders).finish());
+				final Future<?> csv = executor.submit(() -> csvExporter.exportOrders(orders).finish());
+				final Future<?> fulfillment = executor.submit(() -> fulfillmentExporter.exportOrders(orders).finish());
+				join(iif);
+				join(csv);
+				join(fulfillment);
+			} finally {
+				executor.shutdownNow();
+			}
+			writeQuickBooksIFF(iifExporter);
+			writeQuickBooksCSV(csvExporter);
+			writeOrderFulfillment(fulfillmentExporter);
+		}
+	}
 
-		QuickBooksIIFExporter exporter = new QuickBooksIIFExporter(parentPath, writeOrders).exportOrders(orders);
+	private static Path writeQuickBooksIFF(QuickBooksIIFExporter exporter) throws IOException {
+		info("Creating QuickBooks IIF file...");
 		exporter.ensureFileExistsWithHeader();
 		Path file = exporter.write();
 		info("  Wrote " + exporter.getCount() + " lines to " + file);
 		return file;
 	}
 
-	private static Path writeQuickBooksCSV() throws IOException {
+	private static Path writeQuickBooksCSV(QuickBooksTableImportExporter exporter) throws IOException {
 		info("Creating QuickBooks CSV file...");
-		Path parentPath = Paths.get(props.getOptional(AppProperties.QUICKBOOKS_CSV_DIR, QUICKBOOKS_DIR));
-		QuickBooksTableImportExporter exporter = new QuickBooksTableImportExporter(parentPath).exportOrders(orders);
-
 		exporter.ensureFileExistsWithHeader();
 
-		// write to disk
+		// write what is left to disk
 		Path file = exporter.write();
 		info("  Wrote " + exporter.getCount() + " lines to " + file);
 		return file;
 	}
 
-	private static Path writeOrderFulfillment() throws IOException {
+	private static Path writeOrderFulfillment(OrderFulfillmentExporter exporter) throws IOException {
 		info("Creating order fulfillment CSV file...");
-		Path parentPath = Paths.get(props.getOptional(AppProperties.ORDER_FULFILLMENT_DIR, ORDER_FULFILLMENT_DIR));
 
-		if (!Files.exists(parentPath)) {
-			log.fine("FUL:: Parent missing, creating parent - " + parentPath.toAbsolutePath());
-			Files.createDirectories(parentPath);
-		}
-
-		OrderFulfillmentExporter exporter = new OrderFulfillmentExporter(parentPath).exportOrders(orders);
-
-		// write to disk
+		// write what is left to disk
 		Path file = exporter.write();
-		info("  Excluded: " + OrderDetail.EXCLUDED_PRODUCTS);
+		info("  Excluded: " + OrderDetail.getExcludedProducts());
 		info("  Wrote " + exporter.getCount() + " lines to " + file);
 		return file;
 	}
+
+	/**
+	 * Parses a download as it arrives.
+	 */
+	private interface StreamParser {
+		void parse(InputStream in) throws Exception;
+	}
 }
@@ -112,6 +112,13 @@ public class Customer {
 		this.customer.setProperty(key, value);
 	}
 
+	/**
+	 * @return the raw columns, for serialization
+	 */
+	Properties getColumns() {
+		return this.customer.getProperties();
+	}
+
 	public boolean isValid() {
 		try {
 			this.getCustomerId();
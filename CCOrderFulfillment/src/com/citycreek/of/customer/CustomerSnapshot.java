@@ -0,0 +1,308 @@
+package com.citycreek.of.customer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.cjc.util.ByteBufferInputStream;
+
+/**
+ * A binary copy of the customers, keyed by CustomerID, that is reused between runs until the content of the customer
+ * xml changes. The file is memory mapped and a Customer is only decoded when it is looked up.
+ * <p>
+ * Layout:
+ *
+ * <pre>
+ * int     MAGIC
+ * int     VERSION
+ * UTF     checksum of the customer xml
+ * int     count
+ * long    index offset
+ * records; short column count, column count * (UTF name, UTF value)
+ * count * (long CustomerID, long record offset)   sorted by CustomerID
+ * </pre>
+ *
+ * The records are written as they are encoded and the index after them, so writing doesn't hold a copy of the
+ * records in memory. Positions are longs and the file is mapped in chunks, so it isn't limited to 2 GB.
+ */
+public class CustomerSnapshot {
+
+	private static final Logger log = Logger.getLogger(CustomerSnapshot.class.getName());
+
+	private static final int MAGIC = 0x43435343; // CCSC
+	private static final int VERSION = 2;
+	private static final int INDEX_ENTRY_BYTES = 8 + 8;
+	private static final int CHUNK_SHIFT = 30; // 1 GB
+	private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+	private final ByteBuffer[] chunks;
+	private final int count;
+	private final long indexStart;
+	private final Map<String, Customer> decoded = new HashMap<>();
+
+	private CustomerSnapshot(ByteBuffer[] chunks, int count, long indexStart) {
+		this.chunks = chunks;
+		this.count = count;
+		this.indexStart = indexStart;
+	}
+
+	/**
+	 * @return the snapshot file kept alongside the given customer xml
+	 */
+	public static File getFile(File xmlFile) {
+		return new File(xmlFile.getPath() + ".idx");
+	}
+
+	/**
+	 * Map the snapshot if it was written for the given checksum.
+	 *
+	 * @return the snapshot, NULL if missing, stale or unreadable
+	 */
+	public static CustomerSnapshot open(File file, String checksum) {
+		if (!file.isFile()) {
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			final ByteBuffer[] chunks = map(channel);
+			final DataInputStream in = new DataInputStream(openAt(chunks, 0));
+			if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) {
+				log.info("Customer snapshot is an unknown format, file=" + file);
+				return null;
+			}
+			if (!checksum.equals(in.readUTF())) {
+				log.info("Customer snapshot is stale, file=" + file);
+				return null;
+			}
+			final int count = in.readInt();
+			final long indexStart = in.readLong();
+			if ((count < 0) || (indexStart < 0)
+					|| ((indexStart + ((long) count * INDEX_ENTRY_BYTES)) != channel.size())) {
+				log.info("Customer snapshot is incomplete, file=" + file);
+				return null;
+			}
+			return new CustomerSnapshot(chunks, count, indexStart);
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Unable to read customer snapshot, file=" + file, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Write a snapshot of the customers for the given checksum. Customers without a numeric CustomerID are left out.
+	 */
+	public static void write(File file, String checksum, Collection<Customer> customers) throws IOException {
+		final List<Customer> sorted = new ArrayList<>(customers.size());
+		for (Customer customer : customers) {
+			if (toKey(customer.getCustomerId()) != null) {
+				sorted.add(customer);
+			} else {
+				log.warning("Customer left out of snapshot, non-numeric CustomerID=" + customer.getCustomerId());
+			}
+		}
+		sorted.sort(Comparator.comparingLong(c -> toKey(c.getCustomerId())));
+
+		final File tmp = new File(file.getPath() + ".tmp");
+		final long[] keys = new long[sorted.size()];
+		final long[] offsets = new long[sorted.size()];
+		final long indexOffsetPosition;
+		final long indexStart;
+		final CountingOutputStream counter = new CountingOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tmp)));
+		try (DataOutputStream out = new DataOutputStream(counter)) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(checksum);
+			out.writeInt(sorted.size());
+			indexOffsetPosition = counter.getCount();
+			out.writeLong(0L); // set once the records are written
+
+			for (int i = 0; i < sorted.size(); i++) {
+				keys[i] = toKey(sorted.get(i).getCustomerId());
+				offsets[i] = counter.getCount();
+				final Properties columns = sorted.get(i).getColumns();
+				out.writeShort(columns.size());
+				for (String name : columns.stringPropertyNames()) {
+					out.writeUTF(name);
+					out.writeUTF(columns.getProperty(name));
+				}
+			}
+
+			indexStart = counter.getCount();
+			for (int i = 0; i < sorted.size(); i++) {
+				out.writeLong(keys[i]);
+				out.writeLong(offsets[i]);
+			}
+		}
+		try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE)) {
+			final ByteBuffer indexOffset = ByteBuffer.allocate(8).putLong(0, indexStart);
+			while (indexOffset.hasRemaining()) {
+				channel.write(indexOffset, indexOffsetPosition + indexOffset.position());
+			}
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		log.info("Customer snapshot written, customers=" + sorted.size() + ", file=" + file);
+	}
+
+	public int size() {
+		return this.count;
+	}
+
+	/**
+	 * @return the customer or NULL if not found
+	 */
+	public Customer get(String customerId) {
+		final Long key = toKey(customerId);
+		if (key == null) {
+			return null;
+		}
+		synchronized (this.decoded) {
+			Customer customer = this.decoded.get(customerId);
+			if (customer == null) {
+				final long offset = this.find(key);
+				if (offset < 0) {
+					return null;
+				}
+				customer = this.decode(offset);
+				this.decoded.put(customerId, customer);
+			}
+			return customer;
+		}
+	}
+
+	/**
+	 * Binary search of the index.
+	 *
+	 * @return the record offset, -1 if not found
+	 */
+	private long find(long key) {
+		int low = 0;
+		int high = this.count - 1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			final long entry = this.indexStart + ((long) mid * INDEX_ENTRY_BYTES);
+			final long midKey = this.getLong(entry);
+			if (midKey < key) {
+				low = mid + 1;
+			} else if (midKey > key) {
+				high = mid - 1;
+			} else {
+				return this.getLong(entry + 8);
+			}
+		}
+		return -1;
+	}
+
+	private long getLong(long position) {
+		final int offset = (int) (position & CHUNK_MASK);
+		final ByteBuffer chunk = this.chunks[(int) (position >>> CHUNK_SHIFT)];
+		if ((offset + 8) <= chunk.limit()) {
+			return chunk.getLong(offset);
+		}
+		try {
+			return new DataInputStream(openAt(this.chunks, position)).readLong();
+		} catch (IOException e) {
+			throw new RuntimeException("Corrupt customer snapshot at " + position, e);
+		}
+	}
+
+	private Customer decode(long offset) {
+		try {
+			final DataInputStream in = new DataInputStream(openAt(this.chunks, offset));
+			final Customer customer = new Customer();
+			final int columns = in.readUnsignedShort();
+			for (int i = 0; i < columns; i++) {
+				customer.add(in.readUTF(), in.readUTF());
+			}
+			return customer;
+		} catch (IOException e) {
+			throw new RuntimeException("Corrupt customer snapshot at " + offset, e);
+		}
+	}
+
+	/**
+	 * Map the file READ_ONLY in chunks of 1 GB, a single MappedByteBuffer is limited to 2 GB.
+	 */
+	private static ByteBuffer[] map(FileChannel channel) throws IOException {
+		final long size = channel.size();
+		final ByteBuffer[] chunks = new ByteBuffer[(int) Math.max(1, (size + CHUNK_MASK) >>> CHUNK_SHIFT)];
+		for (int i = 0; i < chunks.length; i++) {
+			final long start = (long) i << CHUNK_SHIFT;
+			chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, CHUNK_MASK + 1));
+		}
+		return chunks;
+	}
+
+	/**
+	 * @return the bytes from the position on, read across the chunks
+	 */
+	private static InputStream openAt(ByteBuffer[] chunks, long position) {
+		final int first = (int) (position >>> CHUNK_SHIFT);
+		final List<InputStream> streams = new ArrayList<>(chunks.length - first);
+		for (int i = first; i < chunks.length; i++) {
+			final ByteBuffer chunk = chunks[i].duplicate();
+			if (i == first) {
+				chunk.position((int) (position & CHUNK_MASK));
+			}
+			streams.add(new ByteBufferInputStream(chunk));
+		}
+		return new SequenceInputStream(Collections.enumeration(streams));
+	}
+
+	/**
+	 * Counts the bytes written, as a long.
+	 */
+	private static final class CountingOutputStream extends FilterOutputStream {
+
+		private long count;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		long getCount() {
+			return this.count;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			this.out.write(b);
+			this.count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			this.out.write(b, off, len);
+			this.count += len;
+		}
+	}
+
+	private static Long toKey(String customerId) {
+		try {
+			return Long.valueOf(customerId.trim());
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+}
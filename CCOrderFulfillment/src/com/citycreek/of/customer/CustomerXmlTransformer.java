@@ -1,33 +1,73 @@
 package com.citycreek.of.customer;
 
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import com.cjc.util.IOUtil;
+import com.cjc.util.LongHashMap;
+import com.cjc.util.LongHashSet;
+import com.cjc.util.xml.TransformerException;
+import com.cjc.util.xml.XmlScanner;
 import com.cjc.util.xml.XmlTool;
 
 public class CustomerXmlTransformer {
 
+	private static final Logger log = Logger.getLogger(CustomerXmlTransformer.class.getName());
+
 	private interface Xml {
 
 		// String ROOT = "xmldata";
 		String CUSTOMERS = "Customers";
+		String CUSTOMER_ID = "CustomerID";
 	}
 
-	public void fromXml(File xmlFile, Map<String, Customer> customers) throws Exception {
-		try (FileInputStream in = new FileInputStream(xmlFile)) {
-			final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-			final DocumentBuilder builder = factory.newDocumentBuilder();
-			final Document doc = builder.parse(in);
+	private static final String ANONYMOUS_USER = "anonymous_user";
+
+	/**
+	 * Columns with only a handful of distinct values across the whole customer base.
+	 */
+	private static final Set<String> INTERNED_COLUMNS = new HashSet<>(Arrays.asList("State", "City", "PostalCode"));
+
+	private static final List<String> CUSTOMER_COLUMNS = Arrays.asList(Customer.XML_COLUMNS.split(","));
+
+	private final Map<String, String> interned = new HashMap<>();
+
+	private LongHashSet onlyCustomerIds;
+
+	/**
+	 * Only read the customers with the given ids; the streaming parse stops as soon as all of them are found.
+	 */
+	public CustomerXmlTransformer onlyCustomers(LongHashSet customerIds) {
+		this.onlyCustomerIds = customerIds;
+		return this;
+	}
+
+	public void fromXml(File xmlFile, LongHashMap<Customer> customers) throws Exception {
+		try (InputStream in = IOUtil.newInputStream(xmlFile)) {
+			final Document doc = XmlTool.parseDocument(in);
 
 			final NodeList rootNodes = doc.getChildNodes();
 			final Element e = (Element) rootNodes.item(0);
@@ -43,17 +83,188 @@ public class CustomerXmlTransformer {
 						}
 						final String oKey = child.getNodeName();
 						final String v = child.getTextContent();
-						if (Objects.equals(v, "anonymous_user")) {
+						if (Objects.equals(v, ANONYMOUS_USER)) {
 							// skip anonymous users
 							break;
 						}
 						customer.add(oKey, v);
 					}
 					if (customer.isValid()) {
-						customers.put(customer.getCustomerId(), customer);
+						put(customers, customer);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Streaming alternative to {@link #fromXml(File, LongHashMap)}. The document is never held in memory and a Customer
+	 * is only created for a valid record.
+	 */
+	public void fromXmlStream(File xmlFile, LongHashMap<Customer> customers) throws Exception {
+		try (InputStream in = IOUtil.newInputStream(xmlFile)) {
+			this.fromXmlStream(in, customer -> put(customers, customer));
+		}
+	}
+
+	/**
+	 * Fast-path alternative to {@link #fromXml(File, LongHashMap)}. The file is mapped and scanned byte by byte,
+	 * decoding only the columns in {@link Customer#XML_COLUMNS}. Anything the scanner doesn't expect falls back to
+	 * {@link #fromXml(File, LongHashMap)}; a compressed file is streamed.
+	 */
+	public void fromXmlMapped(File xmlFile, LongHashMap<Customer> customers) throws Exception {
+		if (IOUtil.isCompressed(xmlFile)) {
+			log.fine("Compressed, streaming instead of mapping; file=" + xmlFile);
+			this.fromXmlStream(xmlFile, customers);
+			return;
+		}
+		final List<Customer> scanned = new ArrayList<>();
+		try (FileChannel channel = FileChannel.open(xmlFile.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new TransformerException("File too large to map, " + channel.size());
+			}
+			final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			final List<String> fields = new ArrayList<>();
+			new XmlScanner(Xml.CUSTOMERS, CUSTOMER_COLUMNS, null, Collections.<String> emptyList()).scan(buffer,
+					new XmlScanner.Handler() {
+
+						private boolean valid;
+						private boolean anonymous;
+
+						@Override
+						public void startRecord() {
+							fields.clear();
+							this.valid = false;
+							this.anonymous = false;
+						}
+
+						@Override
+						public void startNested() {
+						}
+
+						@Override
+						public void field(String name, String value) {
+							if (this.anonymous || Objects.equals(value, ANONYMOUS_USER)) {
+								// skip anonymous users
+								this.anonymous = true;
+								return;
+							}
+							fields.add(name);
+							fields.add(INTERNED_COLUMNS.contains(name) ? CustomerXmlTransformer.this.intern(value) : value);
+							this.valid |= Xml.CUSTOMER_ID.equals(name);
+						}
+
+						@Override
+						public void endNested() {
+						}
+
+						@Override
+						public void endRecord() {
+							if (this.valid) {
+								final Customer customer = new Customer();
+								for (int i = 0; i < fields.size(); i += 2) {
+									customer.add(fields.get(i), fields.get(i + 1));
+								}
+								scanned.add(customer);
+							}
+						}
+					});
+		} catch (TransformerException e) {
+			log.warning("Unable to scan customers, parsing instead; file=" + xmlFile + ", " + e.getMessage());
+			this.fromXml(xmlFile, customers);
+			return;
+		}
+		scanned.forEach(customer -> put(customers, customer));
+	}
+
+	/**
+	 * Index the customer by its numeric CustomerID; one without is left out.
+	 */
+	public static void put(LongHashMap<Customer> customers, Customer customer) {
+		try {
+			customers.put(Long.parseLong(customer.getCustomerId()), customer);
+		} catch (NumberFormatException e) {
+			log.warning("Customer left out, non-numeric CustomerID=" + customer.getCustomerId());
+		}
+	}
+
+	public void fromXmlStream(InputStream in, Consumer<Customer> consumer) throws Exception {
+		final XMLStreamReader reader = XmlTool.createXMLStreamReader(in);
+		try {
+			// key, value pairs of the current record; reused for every record
+			final List<String> fields = new ArrayList<>();
+			// distinct ids found, a customer can be listed more than once
+			final LongHashSet found = new LongHashSet();
+			while (reader.hasNext()) {
+				if ((reader.next() == XMLStreamConstants.START_ELEMENT)
+						&& Xml.CUSTOMERS.equals(reader.getLocalName())) {
+					fields.clear();
+					if (this.readFields(reader, fields)) {
+						final Customer customer = new Customer();
+						for (int i = 0; i < fields.size(); i += 2) {
+							customer.add(fields.get(i), fields.get(i + 1));
+						}
+						consumer.accept(customer);
+						if ((this.onlyCustomerIds != null)
+								&& found.add(Long.parseLong(customer.getCustomerId().trim()))
+								&& (found.size() >= this.onlyCustomerIds.size())) {
+							log.fine("All " + found.size() + " customers found, stop reading");
+							break;
+						}
 					}
 				}
 			}
+		} finally {
+			reader.close();
 		}
 	}
+
+	/**
+	 * Reader is positioned on the Customers START_ELEMENT and is left on its END_ELEMENT. The rest of the record is
+	 * skipped once it is known to be an anonymous user or a customer that isn't wanted.
+	 *
+	 * @return true if the record has a CustomerID
+	 */
+	private boolean readFields(XMLStreamReader reader, List<String> fields) throws XMLStreamException {
+		boolean valid = false;
+		int event;
+		while ((event = reader.next()) != XMLStreamConstants.END_ELEMENT) {
+			if (event != XMLStreamConstants.START_ELEMENT) {
+				continue;
+			}
+			final String key = reader.getLocalName();
+			final String v = XmlTool.getElementText(reader);
+			if (Objects.equals(v, ANONYMOUS_USER)) {
+				// skip anonymous users
+				XmlTool.skipElement(reader, 1);
+				break;
+			}
+			if (Xml.CUSTOMER_ID.equals(key)) {
+				if (!this.isWanted(v)) {
+					XmlTool.skipElement(reader, 1);
+					return false;
+				}
+				valid = true;
+			}
+			fields.add(key);
+			fields.add(INTERNED_COLUMNS.contains(key) ? this.intern(v) : v);
+		}
+		return valid;
+	}
+
+	private boolean isWanted(String customerId) {
+		if (this.onlyCustomerIds == null) {
+			return true;
+		}
+		try {
+			return this.onlyCustomerIds.contains(Long.parseLong(customerId.trim()));
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	private String intern(String value) {
+		final String existing = this.interned.putIfAbsent(value, value);
+		return (existing != null) ? existing : value;
+	}
 }
@@ -1,6 +1,15 @@
 package com.citycreek.of.exporter;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
@@ -8,16 +17,31 @@ import java.util.List;
 import java.util.logging.Logger;
 
 import com.citycreek.of.order.Order;
+import com.cjc.util.Money;
 
-public abstract class Exporter {
+/**
+ * Streams the rows to a temporary file next to the file. A row is built in memory, then encoded into a fixed size
+ * direct buffer that is written out whenever it fills up, and at the end by {@link #finish()}. Only {@link #write()}
+ * adds the rows to the file, so a failed run leaves the file as it was; {@link #close()} drops the temporary file.
+ */
+public abstract class Exporter implements Closeable {
 
 	private static final Logger log = Logger.getLogger(Exporter.class.getName());
 
+	private static final int BUFFER_BYTES = 64 * 1024;
+
 	private int count = 0;
 	private char delimiter;
-	protected final StringBuilder data = new StringBuilder();
 	private final Path parentPath;
 
+	private final StringBuilder row = new StringBuilder();
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+	// The platform charset, as String.getBytes() used
+	private final CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private FileChannel channel;
+	private boolean closed;
+
 	public Exporter(char delimiter, Path parentPath) {
 		this.delimiter = delimiter;
 		this.parentPath = parentPath;
@@ -36,10 +60,39 @@ public abstract class Exporter {
 		return file;
 	}
 
+	private Path getTempPath() {
+		return this.getFilePath().resolveSibling(this.getFilename() + ".tmp");
+	}
+
+	/**
+	 * Write what is left in the buffer to the temporary file.
+	 */
+	public Exporter finish() throws IOException {
+		this.encodeRow(true);
+		this.flush();
+		this.channel().close();
+		return this;
+	}
+
+	/**
+	 * Add the finished rows to the end of the file, or move them in place if there is no file yet.
+	 */
 	public Path write() throws IOException {
 		Path file = this.getFilePath();
-		Files.write(file, this.data.toString().getBytes(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
-				StandardOpenOption.APPEND);
+		final Path temp = this.getTempPath();
+		if (!Files.exists(file)) {
+			Files.move(temp, file);
+		} else {
+			try (FileChannel in = FileChannel.open(temp, StandardOpenOption.READ);
+					FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+				long position = 0;
+				final long size = in.size();
+				while (position < size) {
+					position += in.transferTo(position, size - position, out);
+				}
+			}
+		}
+		this.close();
 		System.out.println("  Data written to file - " + this.getFilePath().toAbsolutePath());
 		log.info("Data written to file - " + this.getFilePath().toAbsolutePath());
 		return file;
@@ -47,9 +100,9 @@ public abstract class Exporter {
 
 	protected void column(String value, boolean quotes) {
 		if (quotes) {
-			this.data.append("\"").append(value).append("\"").append(this.delimiter);
+			this.row.append("\"").append(value).append("\"").append(this.delimiter);
 		} else {
-			this.data.append(value).append(this.delimiter);
+			this.row.append(value).append(this.delimiter);
 		}
 	}
 
@@ -61,16 +114,101 @@ public abstract class Exporter {
 		this.column(value.toString(), false);
 	}
 
+	/**
+	 * @param amount as {@link Money}
+	 */
+	protected void money(long amount) {
+		Money.appendTo(this.row, amount).append(this.delimiter);
+	}
+
 	protected void rowEnd() {
-		this.data.append("\r\n");
+		this.row.append("\r\n");
 		this.count++;
+		this.encodeRow(false);
 	}
 
 	protected void headerRow(String header) {
-		this.data.append(header).append("\n");
+		this.raw(header);
+		this.raw("\n");
+	}
+
+	/**
+	 * Write the text as is; it isn't counted as a row.
+	 */
+	protected void raw(String text) {
+		this.row.append(text);
+		this.encodeRow(false);
 	}
 
 	protected void skip() {
-		this.data.append(this.delimiter);
+		this.row.append(this.delimiter);
+	}
+
+	/**
+	 * Encode the row into the buffer, writing the buffer out each time it fills up.
+	 */
+	private void encodeRow(boolean endOfInput) {
+		final CharBuffer chars = CharBuffer.wrap(this.row);
+		try {
+			CoderResult result;
+			while ((result = this.encoder.encode(chars, this.buffer, endOfInput)).isOverflow()) {
+				this.flush();
+			}
+			if (endOfInput) {
+				while ((result = this.encoder.flush(this.buffer)).isOverflow()) {
+					this.flush();
+				}
+			}
+			if (result.isError()) {
+				result.throwException();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to write to file - " + this.getFilePath(), e);
+		}
+		// Anything left is half a surrogate pair, kept for the next row
+		this.row.delete(0, chars.position());
+	}
+
+	/**
+	 * Close the temporary file and delete it; the file itself is left as it is.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		this.closed = true;
+		try {
+			if (this.channel != null) {
+				this.channel.close();
+			}
+		} finally {
+			Files.deleteIfExists(this.getTempPath());
+		}
+	}
+
+	private void flush() throws IOException {
+		final FileChannel out = this.channel();
+		this.buffer.flip();
+		while (this.buffer.hasRemaining()) {
+			out.write(this.buffer);
+		}
+		this.buffer.clear();
+	}
+
+	/**
+	 * @return the temporary file, opened and emptied on the first write
+	 */
+	private synchronized FileChannel channel() throws IOException {
+		if (this.closed) {
+			throw new IOException("Exporter closed - " + this.getFilePath());
+		}
+		if (this.channel == null) {
+			final Path file = this.getFilePath();
+			if ((file.getParent() != null) && !Files.exists(file.getParent())) {
+				log.fine("Parent missing, creating parent - " + file.getParent().toAbsolutePath());
+				Files.createDirectories(file.getParent());
+			}
+			this.channel = FileChannel.open(this.getTempPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+		}
+		return this.channel;
 	}
 }
@@ -79,7 +79,7 @@ public class QuickBooksIIFExporter extends Exporter {
 		if (this.exportOrders) {
 			this.writeTransactionLine(order);
 			order.getDetails().forEach(detail -> this.writeDetailLine(order, detail));
-			this.data.append("ENDTRNS\n");
+			this.raw("ENDTRNS\n");
 		}
 	}
 
@@ -196,7 +196,7 @@ public class QuickBooksIIFExporter extends Exporter {
 		this.column("website");
 
 		// AMOUNT
-		this.column(order.getPaymentAmount());
+		this.money(order.getPaymentAmount());
 
 		// DOCNUM
 		this.column(order.getOrderID());
@@ -250,7 +250,7 @@ public class QuickBooksIIFExporter extends Exporter {
 		this.skip();
 
 		// AMOUNT - od.ProductPrice negated
-		this.column(-detail.getProductPrice());
+		this.money(-detail.getProductPrice());
 
 		// DOCNUM
 		this.skip();
@@ -265,7 +265,7 @@ public class QuickBooksIIFExporter extends Exporter {
 		this.column(detail.getQuantity());
 
 		// PRICE - od.TotalPrice
-		this.column(detail.getTotalPrice());
+		this.money(detail.getTotalPrice());
 
 		// INVITEM
 		this.column(detail.getProductCode());
@@ -20,11 +20,18 @@ public class QuickBooksTableImportExporter extends Exporter {
 		super(',', parentPath);
 	}
 
+	/**
+	 * The payment or purchase order line is derived here and written after the order's own details; the orders aren't
+	 * changed.
+	 */
 	@Override
 	public QuickBooksTableImportExporter exportOrders(List<Order> orders) {
 		orders.forEach(order -> { //
-			this.addPurchaseDetail(order);
 			order.getDetails().forEach(detail -> this.writeLine(order, detail));
+			final OrderDetail purchaseDetail = this.getPurchaseDetail(order);
+			if (purchaseDetail != null) {
+				this.writeLine(order, purchaseDetail);
+			}
 		});
 		return this;
 	}
@@ -54,17 +61,18 @@ public class QuickBooksTableImportExporter extends Exporter {
 		log.info("CSV:: File created with header, file=" + filePath);
 	}
 
-	private void addPurchaseDetail(Order order) {
-		final OrderDetail detail;
+	/**
+	 * @return the purchase order or payment line, NULL if no payment was necessary
+	 */
+	private OrderDetail getPurchaseDetail(Order order) {
 		if (order.isPurchaseOrder()) {
-			detail = new PurchaseOrderDetail(order.getPONum());
-		} else if (order.getPaymentAmount() <= 0.0) {
+			return new PurchaseOrderDetail(order.getPONum());
+		} else if (order.getPaymentAmount() <= 0) {
 			// Don't add payment detail if no payment was necessary.
-			return;
+			return null;
 		} else {
-			detail = new PaymentOrderDetail(order.getPaymentMethod(), order.getPaymentAmount());
+			return new PaymentOrderDetail(order.getPaymentMethod(), order.getPaymentAmount());
 		}
-		order.add(detail);
 	}
 
 	private void writeLine(Order order, OrderDetail detail) {
@@ -99,10 +107,10 @@ public class QuickBooksTableImportExporter extends Exporter {
 		this.column(detail.getQuantity());
 
 		// Rate - always positive even for discounts - QuickBooks negates discount items by product code.
-		this.column(Math.abs(detail.getProductPrice()));
+		this.money(Math.abs(detail.getProductPrice()));
 
 		// Amount - always positive even for discounts - QuickBooks negates discount items by product code.
-		this.column(Math.abs(detail.getTotalPrice()));
+		this.money(Math.abs(detail.getTotalPrice()));
 
 		// Taxable
 		// The taxable column can be blank for all items.
@@ -0,0 +1,41 @@
+package com.citycreek.of.order;
+
+import com.cjc.util.LangUtil;
+
+/**
+ * The non-empty lines of an address, in order, computed once.
+ */
+final class AddressBlock {
+
+	private final String[] lines;
+
+	private AddressBlock(String[] lines) {
+		this.lines = lines;
+	}
+
+	/**
+	 * @param lines candidate lines; empty ones are removed
+	 */
+	static AddressBlock of(String... lines) {
+		int n = 0;
+		for (String line : lines) {
+			if (LangUtil.hasValue(line)) {
+				lines[n++] = line;
+			}
+		}
+		final String[] kept = new String[n];
+		System.arraycopy(lines, 0, kept, 0, n);
+		return new AddressBlock(kept);
+	}
+
+	int size() {
+		return this.lines.length;
+	}
+
+	/**
+	 * @return line x, empty if there are not that many lines
+	 */
+	String line(int x) {
+		return (x < this.lines.length) ? this.lines[x] : "";
+	}
+}
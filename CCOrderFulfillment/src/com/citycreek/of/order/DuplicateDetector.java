@@ -0,0 +1,266 @@
+package com.citycreek.of.order;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.logging.Logger;
+
+import com.cjc.util.LongHashMap;
+
+/**
+ * Leaves out cancelled orders, orders of unknown customers and double submits in one pass over the orders.
+ * <p>
+ * A double submit is an order with the same customer and the same lines as an earlier order, within the id window
+ * and, if set, the time window. Lines match on ProductCode and Quantity in any order, shipping included. Orders are
+ * indexed by a fingerprint of customer and lines, so only orders with the same fingerprint are compared.
+ * <p>
+ * With an {@link OrderHistory} the earlier order can also be one of an earlier run. The orders kept in this run are
+ * recorded in it by {@link #recordHistory()}, once they are exported.
+ * <p>
+ * An order with one more of a product isn't a double submit: the quantities are part of the lines compared, so it is
+ * a different order and kept.
+ */
+public final class DuplicateDetector {
+
+	private static final Logger log = Logger.getLogger(DuplicateDetector.class.getName());
+
+	private static final DateTimeFormatter ORDER_DATE = DateTimeFormatter.ofPattern("M/d/yyyy h:mm:ss a", Locale.US);
+
+	private final int idWindow;
+	private final long minutesWindow;
+	private OrderHistory history;
+	private final List<Entry> toRecord = new ArrayList<>();
+
+	/**
+	 * @param idWindow how far back, in OrderIDs, to look for the earlier order; 1 only compares consecutive ids
+	 * @param minutesWindow how far apart, by OrderDate, the orders may be; 0 for no limit
+	 */
+	public DuplicateDetector(int idWindow, long minutesWindow) {
+		if (idWindow < 1) {
+			throw new IllegalArgumentException("Duplicate id window must be 1 or more, " + idWindow);
+		}
+		if (minutesWindow < 0) {
+			throw new IllegalArgumentException("Duplicate time window must be 0 or more, " + minutesWindow);
+		}
+		this.idWindow = idWindow;
+		this.minutesWindow = minutesWindow;
+	}
+
+	/**
+	 * Also look for the earlier order in the orders of earlier runs.
+	 */
+	public DuplicateDetector withHistory(OrderHistory history) {
+		this.history = history;
+		return this;
+	}
+
+	/**
+	 * Remove the cancelled, unknown customer and duplicate orders from the list.
+	 *
+	 * @return a line for each order removed, in list order
+	 */
+	public List<String> removeDuplicatesOrCancelled(List<Order> orders) {
+		final int size = orders.size();
+		final BitSet removed = new BitSet(size);
+		final String[] reasons = new String[size];
+		final LongHashMap<Deque<Entry>> index = new LongHashMap<>(size);
+
+		for (int position : this.byOrderId(orders)) {
+			final Order order = orders.get(position);
+			if (order.isCancelled()) {
+				removed.set(position);
+				reasons[position] = order.getCustomerName() //
+						+ " :: " + order.getOrderID() + " - cancelled";
+				continue;
+			}
+			if (order.getCustomer() == null) {
+				removed.set(position);
+				reasons[position] = order.getCustomerID() //
+						+ " :: " + order.getOrderID() + " - unknown customer";
+				continue;
+			}
+
+			final Entry entry = new Entry(order, this.orderTime(order));
+			Deque<Entry> recent = index.get(entry.fingerprint);
+			if (recent == null) {
+				recent = new ArrayDeque<>(2);
+				index.put(entry.fingerprint, recent);
+			}
+			// Orders are taken in id order, whatever falls out of the id window now stays out
+			while (!recent.isEmpty() && ((entry.orderId - recent.peekFirst().orderId) > this.idWindow)) {
+				recent.removeFirst();
+			}
+			final Entry previous = this.findPrevious(recent, entry);
+			if (previous != null) {
+				removed.set(position);
+				reasons[position] = previous.order.getCustomerName() //
+						+ " :: " + previous.orderId + " = " + entry.orderId + " - duplicate";
+			} else if (this.history != null) {
+				final long previousId = this.history.findPrevious(entry.fingerprint, entry.orderId, entry.epochMinutes(),
+						this.idWindow, this.minutesWindow);
+				if (previousId != 0L) {
+					removed.set(position);
+					reasons[position] = order.getCustomerName() //
+							+ " :: " + previousId + " = " + entry.orderId + " - duplicate of an earlier run";
+				} else {
+					this.toRecord.add(entry);
+				}
+			}
+			// Kept even if a duplicate, a third submit matches the second
+			recent.addLast(entry);
+		}
+
+		final List<String> removalLogs = new ArrayList<>(removed.cardinality());
+		final List<Order> kept = new ArrayList<>(size - removed.cardinality());
+		for (int position = 0; position < size; position++) {
+			if (removed.get(position)) {
+				removalLogs.add(reasons[position]);
+			} else {
+				kept.add(orders.get(position));
+			}
+		}
+		orders.clear();
+		orders.addAll(kept);
+		return removalLogs;
+	}
+
+	/**
+	 * Record the orders kept by {@link #removeDuplicatesOrCancelled(List)} in the history, if any. Only called once the
+	 * orders are exported, an order of a failed run isn't a duplicate when it is read again.
+	 */
+	public void recordHistory() {
+		if (this.history != null) {
+			for (Entry entry : this.toRecord) {
+				this.history.record(entry.fingerprint, entry.orderId, entry.epochMinutes());
+			}
+		}
+		this.toRecord.clear();
+	}
+
+	/**
+	 * @return the most recent earlier order that the entry duplicates, NULL if none
+	 */
+	private Entry findPrevious(Deque<Entry> recent, Entry entry) {
+		for (Iterator<Entry> i = recent.descendingIterator(); i.hasNext();) {
+			final Entry previous = i.next();
+			if ((previous.orderId < entry.orderId) && this.isWithinTime(previous, entry) && previous.sameAs(entry)) {
+				return previous;
+			}
+		}
+		return null;
+	}
+
+	private boolean isWithinTime(Entry previous, Entry entry) {
+		if (this.minutesWindow == 0) {
+			return true;
+		}
+		if ((previous.time == null) || (entry.time == null)) {
+			return false;
+		}
+		return Math.abs(ChronoUnit.MINUTES.between(previous.time, entry.time)) <= this.minutesWindow;
+	}
+
+	/**
+	 * @return the OrderDate, NULL if not needed or not parsable; always kept in the history
+	 */
+	private LocalDateTime orderTime(Order order) {
+		if ((this.minutesWindow == 0) && (this.history == null)) {
+			return null;
+		}
+		final String date = order.getOrderDate().trim();
+		try {
+			return LocalDateTime.parse(date, ORDER_DATE);
+		} catch (DateTimeParseException e) {
+			log.warning("Unable to parse OrderDate, not checked for duplicates; order=" + order.getOrderID() + ", "
+					+ date);
+			return null;
+		}
+	}
+
+	/**
+	 * @return list positions ordered by OrderID; the list is normally in order already and isn't sorted then
+	 */
+	private List<Integer> byOrderId(List<Order> orders) {
+		final List<Integer> positions = new ArrayList<>(orders.size());
+		boolean sorted = true;
+		for (int position = 0; position < orders.size(); position++) {
+			positions.add(position);
+			sorted &= (position == 0) || (orders.get(position - 1).getOrderID() <= orders.get(position).getOrderID());
+		}
+		if (!sorted) {
+			positions.sort((a, b) -> Long.compare(orders.get(a).getOrderID(), orders.get(b).getOrderID()));
+		}
+		return positions;
+	}
+
+	private static final class Entry {
+
+		final Order order;
+		final long orderId;
+		final LocalDateTime time;
+		final long fingerprint;
+
+		Entry(Order order, LocalDateTime time) {
+			this.order = order;
+			this.orderId = order.getOrderID();
+			this.time = time;
+			// Lines are summed so their order doesn't matter
+			long lines = 0;
+			for (OrderDetail detail : order.getDetails()) {
+				lines += mix(lineHash(detail));
+			}
+			this.fingerprint = mix(order.getCustomerID().hashCode()) ^ lines ^ order.getDetails().size();
+		}
+
+		/**
+		 * @return the OrderDate in epoch minutes, {@link OrderHistory#NO_TIME} if not known
+		 */
+		long epochMinutes() {
+			return (this.time != null) ? (this.time.toEpochSecond(ZoneOffset.UTC) / 60) : OrderHistory.NO_TIME;
+		}
+
+		/**
+		 * Same customer and same lines; the fingerprints can collide.
+		 */
+		boolean sameAs(Entry other) {
+			if ((this.fingerprint != other.fingerprint)
+					|| !Objects.equals(this.order.getCustomerID(), other.order.getCustomerID())) {
+				return false;
+			}
+			final List<OrderDetail> lines = this.order.getDetails();
+			final List<OrderDetail> otherLines = other.order.getDetails();
+			if (lines.size() != otherLines.size()) {
+				return false;
+			}
+			if (lines.equals(otherLines)) {
+				return true;
+			}
+			final List<OrderDetail> unmatched = new ArrayList<>(otherLines);
+			for (OrderDetail line : lines) {
+				if (!unmatched.remove(line)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static long lineHash(OrderDetail detail) {
+			return (31L * detail.getProductCode().hashCode()) + Objects.hashCode(detail.getQuantity());
+		}
+
+		private static long mix(long h) {
+			h *= 0x9E3779B97F4A7C15L;
+			return h ^ (h >>> 32);
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package com.citycreek.of.order;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The per-order steps run after the orders are read, e.g. finding the customer and adding the shipping line. Each
+ * order goes through all the steps in one pass; the orders are split into partitions run on a fork-join pool.
+ * <p>
+ * A step doesn't write to the console, it adds its warnings to the list it is given. The warnings of the partitions
+ * are merged in order of the orders, whatever order the partitions finish in. Every warning is kept; repeats are for
+ * the caller to leave out from the merged warnings, the only place the order is fixed.
+ */
+public final class Enrichment {
+
+	/**
+	 * A step for one order. Orders are enriched on several threads, one thread per order at a time; anything shared
+	 * between orders has to be thread safe.
+	 */
+	public interface Step {
+		void enrich(Order order, List<String> warnings);
+	}
+
+	private static final int PARTITION_SIZE = 256;
+
+	private final List<Step> steps = new ArrayList<>();
+
+	/**
+	 * Add a step, run after the steps already added.
+	 */
+	public Enrichment then(Step step) {
+		this.steps.add(step);
+		return this;
+	}
+
+	/**
+	 * Run the steps over the orders on the common fork-join pool.
+	 *
+	 * @return the warnings in order of the orders
+	 */
+	public List<String> run(List<Order> orders) {
+		return this.run(orders, ForkJoinPool.commonPool());
+	}
+
+	public List<String> run(List<Order> orders, ForkJoinPool pool) {
+		return pool.invoke(new Partition(orders, 0, orders.size()));
+	}
+
+	private final class Partition extends RecursiveTask<List<String>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<Order> orders;
+		private final int from;
+		private final int to;
+
+		Partition(List<Order> orders, int from, int to) {
+			this.orders = orders;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected List<String> compute() {
+			if ((this.to - this.from) <= PARTITION_SIZE) {
+				final List<String> warnings = new ArrayList<>();
+				for (int i = this.from; i < this.to; i++) {
+					final Order order = this.orders.get(i);
+					for (Step step : Enrichment.this.steps) {
+						step.enrich(order, warnings);
+					}
+				}
+				return warnings;
+			}
+			final int middle = (this.from + this.to) >>> 1;
+			final Partition first = new Partition(this.orders, this.from, middle);
+			first.fork();
+			final List<String> second = new Partition(this.orders, middle, this.to).compute();
+			final List<String> warnings = first.join();
+			warnings.addAll(second);
+			return warnings;
+		}
+	}
+}
@@ -1,16 +1,15 @@
 package com.citycreek.of.order;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
-import com.citycreek.of.AppProperties;
 import com.citycreek.of.customer.Customer;
 import com.cjc.util.LangUtil;
+import com.cjc.util.Money;
 import com.cjc.util.PropertiesUtil;
 
 public class Order {
@@ -24,23 +23,33 @@ public class Order {
 					+ "o.BillingFirstName,o.BillingLastName,o.BillingCompanyName,o.BillingPhoneNumber," //
 					+ "o.BillingAddress1,o.BillingAddress2,o.BillingCity,o.BillingState,o.BillingPostalCode,o.BillingCountry";
 
-	private static Properties SHIPPING_METHODS = new Properties();
+	private static final int NO_PAYMENT_METHOD = Integer.MIN_VALUE;
+
+	// Typed columns, parsed once as they are added; everything else stays in the property bag.
+	private long orderId;
+	private boolean hasOrderId = false;
+	private int paymentMethodId = NO_PAYMENT_METHOD;
+	private int shippingMethodId = -1; // the text is kept in the property bag
+	private long paymentAmount; // Money
+	private long totalShippingCost; // Money
+	private long salesTax1; // Money
 
 	private final PropertiesUtil order = new PropertiesUtil(new Properties());
-	private final List<OrderDetail> details = new ArrayList<OrderDetail>();
+	private List<OrderDetail> details = new ArrayList<OrderDetail>();
 	private Customer customer;
 
-	public static void loadShippingMethodMap(PropertiesUtil props) {
-		// Load the exclude column and values
-		final String mapAsString = props.getRequired(AppProperties.SHIPPING_METHOD_MAP);
-		SHIPPING_METHODS = LangUtil.fromString(mapAsString);
-	}
+	// Built on first use, cleared when a column changes; built up front when frozen
+	private AddressBlock billingAddress;
+	private AddressBlock shipAddress;
+	private boolean frozen = false;
 
 	// ORDER
 
 	public long getOrderID() {
-		Long oid = this.order.getRequiredLong("OrderID");
-		return oid;
+		if (!this.hasOrderId) {
+			throw new RuntimeException("Missing or invalid OrderID");
+		}
+		return this.orderId;
 	}
 
 	public String getPONum() {
@@ -72,25 +81,21 @@ public class Order {
 		return this.order.getOptional("OrderDate", "");
 	}
 
-	public double getPaymentAmount() {
-		return this.order.getOptionalDouble("PaymentAmount");
+	/**
+	 * @return the amount as {@link Money}
+	 */
+	public long getPaymentAmount() {
+		return this.paymentAmount;
 	}
 
+	/**
+	 * @return the name from {@link ReferenceData}, empty if unknown
+	 */
 	public String getPaymentMethod() {
-		String method = this.order.getRequired("PaymentMethodID");
-		if (Objects.equals("5", method)) {
-			return "Visa";
-		} else if (Objects.equals("6", method)) {
-			return "MasterCard";
-		} else if (Objects.equals("7", method)) {
-			return "American Express";
-		} else if (Objects.equals("8", method)) {
-			return "Discover";
-		} else if (Objects.equals("12", method)) {
-			return "PayPal Express Upgrade";
-		} else {
-			return "";
+		if (this.paymentMethodId == NO_PAYMENT_METHOD) {
+			throw new RuntimeException("\n\n**********Required Property MISSING!!! - paramName=PaymentMethodID");
 		}
+		return ReferenceData.get().getPaymentMethod(this.paymentMethodId);
 	}
 
 	// CUSTOMER
@@ -104,6 +109,7 @@ public class Order {
 	}
 
 	public void setCustomer(Customer customer) {
+		this.checkNotFrozen();
 		this.customer = customer;
 	}
 
@@ -183,23 +189,25 @@ public class Order {
 	}
 
 	public String getBillingAddressLineX(int x) {
-		List<String> lines = Arrays.asList( //
+		if (this.billingAddress == null) {
+			this.billingAddress = this.buildBillingAddress();
+		}
+		return this.billingAddress.line(x);
+	}
+
+	private AddressBlock buildBillingAddress() {
+		final AddressBlock block = AddressBlock.of( //
 				this.getBillingFirstLastName(), //
 				this.getBillingCompanyName(), //
 				this.getBillingAddress1(), //
 				this.getBillingAddress2(), //
 				this.getBillingAddressCityStateZip(), //
-				this.getBillingCountry()).stream() //
-				.filter(LangUtil::hasValue) // Remove empty lines
-				.collect(Collectors.toList());
-		if ((x == 4) && (lines.size() > 5)) {
+				this.getBillingCountry());
+		if (block.size() > 5) {
 			log.warning("IFF WARNING: More address lines than 5; order=" + this.getOrderID());
 			System.out.println("IFF WARNING: More address lines than 5; order=" + this.getOrderID());
 		}
-		if (x < lines.size()) {
-			return lines.get(x);
-		}
-		return "";
+		return block;
 	}
 
 	// SHIPPING
@@ -249,18 +257,15 @@ public class Order {
 		return (this.getShipFirstName() + " " + this.getShipLastName()).trim();
 	}
 
+	/**
+	 * @return the name from {@link ReferenceData}, the id if unknown, NULL if none
+	 */
 	public String getShipMethod() {
-		String method = null;
 		final String methodId = this.order.getOptional("ShippingMethodID");
-		if (LangUtil.hasValue(methodId)) {
-			method = SHIPPING_METHODS.getProperty(methodId);
-			if (!LangUtil.hasValue(method)) {
-				method = methodId;
-				System.out.println("WARNING: Unknown shipping method: " + methodId);
-				log.warning("Missing shipping method id: " + methodId);
-			}
+		if (!LangUtil.hasValue(methodId)) {
+			return null;
 		}
-		return method;
+		return ReferenceData.get().getShipMethod(this.shippingMethodId, methodId);
 	}
 
 	private String getShipAddressCityStateZip() {
@@ -270,31 +275,34 @@ public class Order {
 	}
 
 	public String getShipAddressLineX(int x) {
-		List<String> lines = Arrays.asList( //
+		if (this.shipAddress == null) {
+			this.shipAddress = this.buildShipAddress();
+		}
+		return this.shipAddress.line(x);
+	}
+
+	private AddressBlock buildShipAddress() {
+		return AddressBlock.of( //
 				this.getShipFirstLastName(), //
 				this.getShipCompanyName(), //
 				this.getShipAddress1(), //
 				this.getShipAddress2(), //
 				this.getShipAddressCityStateZip(), //
-				this.getShipCountry()).stream() //
-				.filter(LangUtil::hasValue) // Remove empty lines
-				.collect(Collectors.toList());
-		if (x < lines.size()) {
-			return lines.get(x);
-		}
-		return "";
+				this.getShipCountry());
 	}
 
-	public double getTotalShippingCost() {
-		return this.order.getOptionalDouble("TotalShippingCost");
+	/**
+	 * @return the amount as {@link Money}
+	 */
+	public long getTotalShippingCost() {
+		return this.totalShippingCost;
 	}
 
 	/**
 	 * Taxable if any detail lines are taxable.
 	 */
 	public boolean isTaxable() {
-		double salesTax = this.order.getOptionalDouble("SalesTax1");
-		return salesTax > 0;
+		return this.salesTax1 > 0;
 	}
 
 	// DETAIL
@@ -315,53 +323,131 @@ public class Order {
 	}
 
 	public void add(String key, String value) {
-		this.order.setProperty(key, value);
+		this.checkNotFrozen();
+		switch (key) {
+		case "OrderID":
+			try {
+				this.orderId = Long.parseLong(value.trim());
+				this.hasOrderId = true;
+			} catch (NumberFormatException e) {
+				this.hasOrderId = false;
+			}
+			break;
+		case "PaymentMethodID":
+			try {
+				this.paymentMethodId = Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				this.paymentMethodId = 0; // no name
+			}
+			break;
+		case "ShippingMethodID":
+			try {
+				this.shippingMethodId = Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				this.shippingMethodId = -1; // unknown
+			}
+			this.order.setProperty(key, value);
+			break;
+		case "PaymentAmount":
+			this.paymentAmount = parseAmount(key, value);
+			break;
+		case "TotalShippingCost":
+			this.totalShippingCost = parseAmount(key, value);
+			break;
+		case "SalesTax1":
+			this.salesTax1 = parseAmount(key, value);
+			break;
+		default:
+			this.order.setProperty(key, value);
+			this.billingAddress = null;
+			this.shipAddress = null;
+			break;
+		}
+	}
+
+	/**
+	 * @return the amount as {@link Money}, 0 if empty or not a number
+	 */
+	static long parseAmount(String key, String value) {
+		try {
+			return Money.parseOptional(value);
+		} catch (NumberFormatException e) {
+			log.warning("Unable to parse amount, " + key + "=" + value);
+			return 0L;
+		}
 	}
 
 	public void add(OrderDetail detail) {
+		this.checkNotFrozen();
+		detail.intern(ProductCatalog.get());
 		this.details.add(detail);
 	}
 
-	public String getColumnByName(String colName) {
-		return this.order.getOptional(colName);
+	/**
+	 * Make the order and its details read-only once enrichment is done. The address blocks are built now, so nothing is
+	 * written on a read afterwards and the frozen order can be shared by exporters on other threads; hand it over
+	 * through an executor or another safe publication.
+	 *
+	 * @return this order
+	 */
+	public Order freeze() {
+		if (!this.frozen) {
+			this.details.forEach(OrderDetail::freeze);
+			this.details = Collections.unmodifiableList(new ArrayList<>(this.details));
+			this.billingAddress = this.buildBillingAddress();
+			this.shipAddress = this.buildShipAddress();
+			this.frozen = true;
+		}
+		return this;
 	}
 
-	public void addShipDetail() {
-		double totalShippingCost = this.getTotalShippingCost();
-		if (totalShippingCost > 0.0) {
-			ShipOrderDetail detail = new ShipOrderDetail(this.getShipMethod(), totalShippingCost);
-			this.details.add(detail);
-		}
+	public boolean isFrozen() {
+		return this.frozen;
 	}
 
-	public boolean isPurchaseOrder() {
-		return LangUtil.hasValue(this.getPONum());
+	private void checkNotFrozen() {
+		if (this.frozen) {
+			throw new IllegalStateException("Order is frozen, OrderID=" + this.getColumnByName("OrderID"));
+		}
 	}
 
 	/**
-	 * Duplicate if:
-	 * <ul>
-	 * <li>Sequential order ids</li>
-	 * <li>Same customer</li>
-	 * <li>Same number detail lines</li>
-	 * <li>Each detail line matches ProductCode and Quantity</li>
-	 * </ul>
-	 * TODO What if the customer orders one more?
+	 * @return the column as text; the typed columns are formatted from their parsed values
 	 */
-	public boolean isDuplicate(Order order2) {
-		// Sequential order ids
-		final long prevOrderId = this.getOrderID();
-		final long currOrderId = order2.getOrderID();
-		if (prevOrderId != (currOrderId - 1)) {
-			return false;
+	public String getColumnByName(String colName) {
+		switch (colName) {
+		case "OrderID":
+			return this.hasOrderId ? Long.toString(this.orderId) : null;
+		case "PaymentMethodID":
+			return (this.paymentMethodId != NO_PAYMENT_METHOD) ? Integer.toString(this.paymentMethodId) : null;
+		case "PaymentAmount":
+			return Money.toString(this.paymentAmount);
+		case "TotalShippingCost":
+			return Money.toString(this.totalShippingCost);
+		case "SalesTax1":
+			return Money.toString(this.salesTax1);
+		default:
+			return this.order.getOptional(colName);
 		}
+	}
 
-		if (!Objects.equals(this.getCustomerID(), order2.getCustomerID())) {
-			return false;
+	/**
+	 * Add the shipping line, if shipping was charged; an {@link Enrichment.Step}.
+	 */
+	public void addShipDetail(List<String> warnings) {
+		this.checkNotFrozen();
+		final long totalShippingCost = this.getTotalShippingCost();
+		if (totalShippingCost > 0) {
+			final String methodId = this.order.getOptional("ShippingMethodID");
+			final String method = LangUtil.hasValue(methodId)
+					? ReferenceData.get().getShipMethod(this.shippingMethodId, methodId, warnings)
+					: null;
+			ShipOrderDetail detail = new ShipOrderDetail(method, totalShippingCost);
+			this.add(detail);
 		}
+	}
 
-		// Same number detail lines and each
-		// Each detail line matches productcode
-		return Objects.equals(this.getDetails(), order2.getDetails());
+	public boolean isPurchaseOrder() {
+		return LangUtil.hasValue(this.getPONum());
 	}
 }
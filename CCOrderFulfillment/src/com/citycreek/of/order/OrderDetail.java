@@ -1,86 +1,167 @@
 package com.citycreek.of.order;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Objects;
-import java.util.Properties;
+import java.util.logging.Logger;
 
 import com.citycreek.of.AppProperties;
 import com.cjc.util.LangUtil;
+import com.cjc.util.Money;
 import com.cjc.util.PropertiesUtil;
 
+/**
+ * An order line: a {@link Product} from the {@link ProductCatalog} once the line is added to its order, plus the
+ * quantity and total. Columns other than {@link #XML_COLUMNS} are ignored.
+ */
 public class OrderDetail {
 
 	public static final String XML_COLUMNS = //
 			"od.ProductCode,od.ProductName,od.ProductPrice,od.Quantity,od.TotalPrice";
 
-	public static final List<String> EXCLUDED_PRODUCTS = new ArrayList<>();
+	private static final Logger log = Logger.getLogger(OrderDetail.class.getName());
 
-	private final PropertiesUtil detail = new PropertiesUtil(new Properties());
+	private static volatile ProductRules excludedProducts = ProductRules.NONE;
 
-	private String productCode = "";
+	private Product product = Product.NONE;
 	private String quantity = "";
+	private int quantityValue = 0;
+	private long totalPrice; // Money
+	private boolean frozen = false;
 
 	public OrderDetail() {
 	}
 
-	public OrderDetail(String productCode, double paymentAmount) {
+	/**
+	 * @param paymentAmount as {@link Money}
+	 */
+	public OrderDetail(String productCode, long paymentAmount) {
 		this.add("ProductCode", productCode);
-		if (paymentAmount > 0.0) {
-			this.add("TotalPrice", Double.toString(paymentAmount));
+		if (paymentAmount > 0) {
+			this.totalPrice = paymentAmount;
 		}
 	}
 
 	public static void loadShippingExcludedProducts(PropertiesUtil props) {
 		// Load the exclude column and values
-		final String[] products = props.getRequired(AppProperties.SHIPPING_EXCLUDED_PRODUCTS).split(",");
-		for (String exclude : products) {
-			if (LangUtil.hasValue(exclude)) {
-				EXCLUDED_PRODUCTS.add(exclude.trim().toUpperCase());
-			}
-		}
+		setExcludedProducts(ProductRules.compile(props.getRequired(AppProperties.SHIPPING_EXCLUDED_PRODUCTS)));
+	}
+
+	/**
+	 * Replace the products excluded from shipping; details checked afterwards use the new rules.
+	 */
+	public static void setExcludedProducts(ProductRules rules) {
+		excludedProducts = rules;
+	}
+
+	public static ProductRules getExcludedProducts() {
+		return excludedProducts;
+	}
+
+	public Product getProduct() {
+		return this.product;
 	}
 
 	public String getProductCode() {
-		return this.productCode;
+		return this.product.getCode();
 	}
 
 	public String getProductName() {
-		return this.detail.getOptional("ProductName", "");
+		return this.product.getName();
+	}
+
+	/**
+	 * @return the price as {@link Money}
+	 */
+	public long getProductPrice() {
+		return this.product.getPrice();
 	}
 
-	public double getProductPrice() {
-		return this.detail.getOptionalDouble("ProductPrice");
+	void setProductPrice(long productPrice) {
+		this.checkNotFrozen();
+		this.product = this.product.withPrice(productPrice);
 	}
 
 	public String getQuantity() {
 		return this.quantity;
 	}
 
-	public double getTotalPrice() {
-		return this.detail.getOptionalDouble("TotalPrice");
+	/**
+	 * @return the price as {@link Money}
+	 */
+	public long getTotalPrice() {
+		return this.totalPrice;
 	}
 
 	public void add(String key, String value) {
-		if (Objects.equals(key, "ProductCode")) {
-			this.productCode = value;
-		} else if (Objects.equals(key, "Quantity")) {
+		this.checkNotFrozen();
+		switch (key) {
+		case "ProductCode":
+			this.product = this.product.withCode(value);
+			break;
+		case "ProductName":
+			this.product = this.product.withName(value);
+			break;
+		case "ProductPrice":
+			this.product = this.product.withPrice(Order.parseAmount(key, value));
+			break;
+		case "Quantity":
 			this.quantity = value;
+			this.quantityValue = parseQuantity(value);
+			break;
+		case "TotalPrice":
+			this.totalPrice = Order.parseAmount(key, value);
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Swap the product for the catalog's shared instance; done as the line is added to its order.
+	 */
+	void intern(ProductCatalog catalog) {
+		this.product = catalog.intern(this.product);
+	}
+
+	/**
+	 * Make the detail read-only, see {@link Order#freeze()}.
+	 */
+	void freeze() {
+		this.frozen = true;
+	}
+
+	private void checkNotFrozen() {
+		if (this.frozen) {
+			throw new IllegalStateException("Order detail is frozen, ProductCode=" + this.getProductCode());
 		}
-		this.detail.setProperty(key, value);
 	}
 
 	public boolean isExcludedFromShipping() {
-		boolean excluded = EXCLUDED_PRODUCTS.contains(this.getProductCode().trim().toUpperCase());
-		excluded |= (this.detail.getOptionalInt("Quantity", 0) < 1);
-		return excluded;
+		return (this.quantityValue < 1) || excludedProducts.matches(this.getProductCode());
+	}
+
+	/**
+	 * @return the quantity, 0 if empty or not a number
+	 */
+	private static int parseQuantity(String value) {
+		if (!LangUtil.hasValue(value)) {
+			return 0;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			log.warning("Unable to parse Quantity=" + value);
+			return 0;
+		}
 	}
 
+	/**
+	 * Product codes are shared through the {@link ProductCatalog}, so comparing them is normally a reference check.
+	 */
 	@Override
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
-		result = (prime * result) + ((this.productCode == null) ? 0 : this.productCode.hashCode());
+		result = (prime * result) + this.getProductCode().hashCode();
 		result = (prime * result) + ((this.quantity == null) ? 0 : this.quantity.hashCode());
 		return result;
 	}
@@ -97,20 +178,6 @@ public class OrderDetail {
 			return false;
 		}
 		OrderDetail other = (OrderDetail) obj;
-		if (this.productCode == null) {
-			if (other.productCode != null) {
-				return false;
-			}
-		} else if (!this.productCode.equals(other.productCode)) {
-			return false;
-		}
-		if (this.quantity == null) {
-			if (other.quantity != null) {
-				return false;
-			}
-		} else if (!this.quantity.equals(other.quantity)) {
-			return false;
-		}
-		return true;
+		return this.getProductCode().equals(other.getProductCode()) && Objects.equals(this.quantity, other.quantity);
 	}
 }
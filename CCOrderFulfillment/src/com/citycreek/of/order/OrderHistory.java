@@ -0,0 +1,243 @@
+package com.citycreek.of.order;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.cjc.util.LongHashMap;
+
+/**
+ * The order fingerprints of earlier runs, so a double submit split across two runs is still caught. A fixed size,
+ * memory mapped file; it doesn't grow with the order history.
+ * <p>
+ * A Bloom filter remembers every fingerprint ever recorded and answers "never seen" without looking further. The most
+ * recent orders are also kept exactly, in a ring, with their OrderID and OrderDate; only those can make an order a
+ * duplicate, the Bloom filter alone can be wrong.
+ * <p>
+ * Layout:
+ *
+ * <pre>
+ * int     MAGIC
+ * int     VERSION
+ * int     Bloom filter bits, log2
+ * int     Bloom filter hashes
+ * int     ring capacity
+ * int     next ring slot
+ * long    orders recorded
+ * bits / 8 bytes   Bloom filter
+ * capacity * (long fingerprint, long OrderID, long OrderDate in epoch minutes)
+ * </pre>
+ */
+public class OrderHistory implements Closeable {
+
+	private static final Logger log = Logger.getLogger(OrderHistory.class.getName());
+
+	private static final int MAGIC = 0x43434648; // CCFH
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 32;
+	private static final int BLOOM_BITS_LOG2 = 23; // 1 MB
+	private static final int BLOOM_HASHES = 4;
+	private static final int RING_CAPACITY = 4096;
+	private static final int RING_ENTRY_BYTES = 8 + 8 + 8;
+
+	/** OrderDate not known. */
+	public static final long NO_TIME = Long.MIN_VALUE;
+
+	private static final int NEXT_OFFSET = 20;
+	private static final int RECORDED_OFFSET = 24;
+
+	private final File file;
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final long bloomMask;
+	private final int ringStart;
+
+	// Ring slots by fingerprint, rebuilt from the ring when opened
+	private final LongHashMap<List<Integer>> recent = new LongHashMap<>(RING_CAPACITY);
+
+	private OrderHistory(File file, FileChannel channel, MappedByteBuffer buffer) {
+		this.file = file;
+		this.channel = channel;
+		this.buffer = buffer;
+		this.bloomMask = (1L << BLOOM_BITS_LOG2) - 1;
+		this.ringStart = HEADER_BYTES + (1 << (BLOOM_BITS_LOG2 - 3));
+		for (int slot = 0; slot < RING_CAPACITY; slot++) {
+			if (this.orderIdAt(slot) != 0) {
+				this.slots(this.fingerprintAt(slot)).add(slot);
+			}
+		}
+	}
+
+	/**
+	 * Map the history file, creating it if missing. A file of another format is started over.
+	 */
+	public static OrderHistory open(File file) throws IOException {
+		final long size = HEADER_BYTES + (1L << (BLOOM_BITS_LOG2 - 3)) + ((long) RING_CAPACITY * RING_ENTRY_BYTES);
+		final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			final boolean existing = channel.size() > 0;
+			if (existing && !isCurrentFormat(channel, size)) {
+				log.warning("Order history is an unknown format, starting over; file=" + file);
+				channel.truncate(0);
+			}
+			final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			if (buffer.getInt(0) != MAGIC) {
+				buffer.putInt(0, MAGIC);
+				buffer.putInt(4, VERSION);
+				buffer.putInt(8, BLOOM_BITS_LOG2);
+				buffer.putInt(12, BLOOM_HASHES);
+				buffer.putInt(16, RING_CAPACITY);
+				buffer.putInt(NEXT_OFFSET, 0);
+				buffer.putLong(RECORDED_OFFSET, 0L);
+			}
+			final OrderHistory history = new OrderHistory(file, channel, buffer);
+			log.info("Order history opened, recorded=" + buffer.getLong(RECORDED_OFFSET) + ", file=" + file);
+			return history;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private static boolean isCurrentFormat(FileChannel channel, long size) throws IOException {
+		if (channel.size() != size) {
+			return false;
+		}
+		final MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+		return (header.getInt(0) == MAGIC) && (header.getInt(4) == VERSION) && (header.getInt(8) == BLOOM_BITS_LOG2)
+				&& (header.getInt(12) == BLOOM_HASHES) && (header.getInt(16) == RING_CAPACITY);
+	}
+
+	/**
+	 * @return false if the fingerprint was never recorded
+	 */
+	public boolean mightContain(long fingerprint) {
+		long h = fingerprint;
+		final long step = mix(fingerprint) | 1;
+		for (int i = 0; i < BLOOM_HASHES; i++, h += step) {
+			final long bit = h & this.bloomMask;
+			final int index = HEADER_BYTES + (int) (bit >>> 3);
+			if ((this.buffer.get(index) & (1 << (bit & 7))) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Find the most recent earlier order with the fingerprint, no more than idWindow OrderIDs before and, unless
+	 * minutesWindow is 0, no more than minutesWindow minutes apart.
+	 *
+	 * @param time OrderDate in epoch minutes, {@link #NO_TIME} if not known
+	 * @return the OrderID found, 0 if none
+	 */
+	public long findPrevious(long fingerprint, long orderId, long time, int idWindow, long minutesWindow) {
+		if (!this.mightContain(fingerprint)) {
+			return 0L;
+		}
+		final List<Integer> slots = this.recent.get(fingerprint);
+		long found = 0L;
+		if (slots != null) {
+			for (int slot : slots) {
+				final long previousId = this.orderIdAt(slot);
+				if ((previousId >= orderId) || ((orderId - previousId) > idWindow) || (previousId <= found)) {
+					continue;
+				}
+				if (minutesWindow > 0) {
+					final long previousTime = this.timeAt(slot);
+					if ((time == NO_TIME) || (previousTime == NO_TIME)
+							|| (Math.abs(time - previousTime) > minutesWindow)) {
+						continue;
+					}
+				}
+				found = previousId;
+			}
+		}
+		if (found == 0L) {
+			log.fine("Order fingerprint seen before, no earlier order in the window; order=" + orderId);
+		}
+		return found;
+	}
+
+	/**
+	 * Remember the order; recording an order that is still among the recent orders does nothing.
+	 *
+	 * @param time OrderDate in epoch minutes, {@link #NO_TIME} if not known
+	 */
+	public void record(long fingerprint, long orderId, long time) {
+		final List<Integer> existing = this.recent.get(fingerprint);
+		if (existing != null) {
+			for (int slot : existing) {
+				if (this.orderIdAt(slot) == orderId) {
+					return;
+				}
+			}
+		}
+
+		long h = fingerprint;
+		final long step = mix(fingerprint) | 1;
+		for (int i = 0; i < BLOOM_HASHES; i++, h += step) {
+			final long bit = h & this.bloomMask;
+			final int index = HEADER_BYTES + (int) (bit >>> 3);
+			this.buffer.put(index, (byte) (this.buffer.get(index) | (1 << (bit & 7))));
+		}
+
+		final int slot = this.buffer.getInt(NEXT_OFFSET);
+		if (this.orderIdAt(slot) != 0) {
+			// Overwrite the oldest
+			final long oldFingerprint = this.fingerprintAt(slot);
+			final List<Integer> oldSlots = this.recent.get(oldFingerprint);
+			oldSlots.remove(Integer.valueOf(slot));
+			if (oldSlots.isEmpty()) {
+				this.recent.remove(oldFingerprint);
+			}
+		}
+		final int entry = this.ringStart + (slot * RING_ENTRY_BYTES);
+		this.buffer.putLong(entry, fingerprint);
+		this.buffer.putLong(entry + 8, orderId);
+		this.buffer.putLong(entry + 16, time);
+		this.slots(fingerprint).add(slot);
+		this.buffer.putInt(NEXT_OFFSET, (slot + 1) % RING_CAPACITY);
+		this.buffer.putLong(RECORDED_OFFSET, this.buffer.getLong(RECORDED_OFFSET) + 1);
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.buffer.force();
+		this.channel.close();
+		log.info("Order history saved, recorded=" + this.buffer.getLong(RECORDED_OFFSET) + ", file=" + this.file);
+	}
+
+	private List<Integer> slots(long fingerprint) {
+		List<Integer> slots = this.recent.get(fingerprint);
+		if (slots == null) {
+			slots = new ArrayList<>(1);
+			this.recent.put(fingerprint, slots);
+		}
+		return slots;
+	}
+
+	private long fingerprintAt(int slot) {
+		return this.buffer.getLong(this.ringStart + (slot * RING_ENTRY_BYTES));
+	}
+
+	private long orderIdAt(int slot) {
+		return this.buffer.getLong(this.ringStart + (slot * RING_ENTRY_BYTES) + 8);
+	}
+
+	private long timeAt(int slot) {
+		return this.buffer.getLong(this.ringStart + (slot * RING_ENTRY_BYTES) + 16);
+	}
+
+	private static long mix(long h) {
+		h *= 0x9E3779B97F4A7C15L;
+		return h ^ (h >>> 32);
+	}
+}
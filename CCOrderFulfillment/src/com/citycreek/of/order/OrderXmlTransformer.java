@@ -1,17 +1,36 @@
 package com.citycreek.of.order;
 
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import com.cjc.util.ByteBufferInputStream;
+import com.cjc.util.IOUtil;
+import com.cjc.util.xml.TransformerException;
+import com.cjc.util.xml.XmlScanner;
 import com.cjc.util.xml.XmlTool;
 
 /**
@@ -19,26 +38,70 @@ import com.cjc.util.xml.XmlTool;
  */
 public class OrderXmlTransformer {
 
+	private static final Logger log = Logger.getLogger(OrderXmlTransformer.class.getName());
+
 	private interface Xml {
 
 		// String ROOT = "xmldata";
 		String ORDERS = "Orders";
 		String ORDER_DETAILS = "OrderDetails";
+		String ORDER_ID = "OrderID";
+	}
+
+	/**
+	 * Smallest chunk handed to a parallel parse; anything smaller than two chunks is simply streamed.
+	 */
+	private static final int MIN_CHUNK_BYTES = 256 * 1024;
+
+	private static final byte[] ORDERS_TAG = Xml.ORDERS.getBytes(StandardCharsets.UTF_8);
+
+	private static final List<String> ORDER_COLUMNS = columns(Order.XML_COLUMNS);
+	private static final List<String> ORDER_DETAIL_COLUMNS = columns(OrderDetail.XML_COLUMNS);
+
+	private long skipThroughOrderId = 0;
+
+	/**
+	 * Skip every order with an OrderID at or below the given id; they are dropped as soon as their OrderID is read,
+	 * before an Order is built.
+	 */
+	public OrderXmlTransformer skipOrdersThrough(long orderId) {
+		this.skipThroughOrderId = orderId;
+		return this;
+	}
+
+	private boolean isSkipped(String orderId) {
+		if (this.skipThroughOrderId <= 0) {
+			return false;
+		}
+		try {
+			return Long.parseLong(orderId.trim()) <= this.skipThroughOrderId;
+		} catch (NumberFormatException e) {
+			return false; // invalid orders are dropped later
+		}
+	}
+
+	/**
+	 * @return true if the parsed order is kept
+	 */
+	private boolean isAccepted(Order order) {
+		return order.isValid() && (order.getOrderID() > this.skipThroughOrderId);
 	}
 
 	public void fromXml(File xmlFile, List<Order> orders) throws Exception {
-		try (FileInputStream in = new FileInputStream(xmlFile)) {
-			final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-			final DocumentBuilder builder = factory.newDocumentBuilder();
-			final Document doc = builder.parse(in);
+		try (InputStream in = IOUtil.newInputStream(xmlFile)) {
+			final Document doc = XmlTool.parseDocument(in);
 
 			final NodeList rootNodes = doc.getChildNodes();
 			final Element e = (Element) rootNodes.item(0);
 			if (e != null) {
 				// for each 'property' element
 				for (final Element order : XmlTool.getElements(e, Xml.ORDERS)) {
+					final Element orderId = XmlTool.getElement(order, Xml.ORDER_ID);
+					if ((orderId != null) && this.isSkipped(orderId.getTextContent())) {
+						continue;
+					}
 					final Order newOrder = this.fromXmlOrder(order);
-					if (newOrder.isValid()) {
+					if (this.isAccepted(newOrder)) {
 						orders.add(newOrder);
 					}
 				}
@@ -46,6 +109,326 @@ public class OrderXmlTransformer {
 		}
 	}
 
+	/**
+	 * Streaming alternative to {@link #fromXml(File, List)}. The document is never held in memory, only the order
+	 * currently being read.
+	 */
+	public void fromXmlStream(File xmlFile, List<Order> orders) throws Exception {
+		try (InputStream in = IOUtil.newInputStream(xmlFile)) {
+			this.fromXmlStream(in, orders::add);
+		}
+	}
+
+	/**
+	 * Pull each order, with its details, from the stream and hand it to the consumer as soon as its closing tag is
+	 * read.
+	 */
+	public void fromXmlStream(InputStream in, Consumer<Order> consumer) throws Exception {
+		final XMLStreamReader reader = XmlTool.createXMLStreamReader(in);
+		try {
+			while (reader.hasNext()) {
+				if ((reader.next() == XMLStreamConstants.START_ELEMENT) && Xml.ORDERS.equals(reader.getLocalName())) {
+					final Order newOrder = this.fromXmlOrder(reader);
+					if ((newOrder != null) && this.isAccepted(newOrder)) {
+						consumer.accept(newOrder);
+					}
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Fast-path alternative to {@link #fromXml(File, List)}. The file is mapped and scanned byte by byte, decoding only
+	 * the columns in {@link Order#XML_COLUMNS} and {@link OrderDetail#XML_COLUMNS}. Anything the scanner doesn't expect
+	 * falls back to {@link #fromXml(File, List)}; a compressed file is streamed.
+	 */
+	public void fromXmlMapped(File xmlFile, List<Order> orders) throws Exception {
+		if (IOUtil.isCompressed(xmlFile)) {
+			log.fine("Compressed, streaming instead of mapping; file=" + xmlFile);
+			this.fromXmlStream(xmlFile, orders);
+			return;
+		}
+		final List<Order> scanned = new ArrayList<>();
+		try (FileChannel channel = FileChannel.open(xmlFile.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new TransformerException("File too large to map, " + channel.size());
+			}
+			final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			new XmlScanner(Xml.ORDERS, ORDER_COLUMNS, Xml.ORDER_DETAILS, ORDER_DETAIL_COLUMNS).scan(buffer,
+					new XmlScanner.Handler() {
+
+						private Order order;
+						private OrderDetail detail;
+						private boolean skipped;
+
+						@Override
+						public void startRecord() {
+							this.order = null;
+							this.skipped = false;
+						}
+
+						@Override
+						public void startNested() {
+							this.detail = new OrderDetail();
+						}
+
+						@Override
+						public void field(String name, String value) {
+							if (this.skipped) {
+								return;
+							}
+							if (this.detail != null) {
+								this.detail.add(name, value);
+								return;
+							}
+							if ((this.order == null) && Xml.ORDER_ID.equals(name)
+									&& OrderXmlTransformer.this.isSkipped(value)) {
+								this.skipped = true;
+								return;
+							}
+							this.order().add(name, value);
+						}
+
+						@Override
+						public void endNested() {
+							if (!this.skipped) {
+								this.order().add(this.detail);
+							}
+							this.detail = null;
+						}
+
+						@Override
+						public void endRecord() {
+							if (!this.skipped && OrderXmlTransformer.this.isAccepted(this.order())) {
+								scanned.add(this.order);
+							}
+							this.order = null;
+						}
+
+						private Order order() {
+							if (this.order == null) {
+								this.order = new Order();
+							}
+							return this.order;
+						}
+					});
+		} catch (TransformerException e) {
+			log.warning("Unable to scan orders, parsing instead; file=" + xmlFile + ", " + e.getMessage());
+			this.fromXml(xmlFile, orders);
+			return;
+		}
+		orders.addAll(scanned);
+	}
+
+	/**
+	 * @return the column names without the table alias, i.e. o.OrderID is OrderID
+	 */
+	private static List<String> columns(String xmlColumns) {
+		final List<String> columns = new ArrayList<>();
+		for (String column : xmlColumns.split(",")) {
+			columns.add(column.substring(column.indexOf('.') + 1).trim());
+		}
+		return columns;
+	}
+
+	/**
+	 * Parallel alternative to {@link #fromXml(File, List)}. The file is mapped and split into byte ranges at the
+	 * top-level Orders elements, each range is parsed on the ForkJoinPool and the results are merged back in document
+	 * order. Falls back to {@link #fromXmlStream(File, List)} if the file is compressed or can't be split.
+	 */
+	public void fromXmlParallel(File xmlFile, List<Order> orders) throws Exception {
+		if (IOUtil.isCompressed(xmlFile)) {
+			log.fine("Compressed, streaming instead of splitting; file=" + xmlFile);
+			this.fromXmlStream(xmlFile, orders);
+			return;
+		}
+		final List<Order> parsed;
+		try (FileChannel channel = FileChannel.open(xmlFile.toPath(), StandardOpenOption.READ)) {
+			final long size = channel.size();
+			if ((size < (2 * MIN_CHUNK_BYTES)) || (size > Integer.MAX_VALUE)) {
+				this.fromXmlStream(xmlFile, orders);
+				return;
+			}
+			final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			final int[] chunks = this.split(buffer, (int) Math.max(MIN_CHUNK_BYTES,
+					size / (ForkJoinPool.getCommonPoolParallelism() * 4)));
+			if (chunks.length < 3) {
+				this.fromXmlStream(xmlFile, orders);
+				return;
+			}
+			try {
+				parsed = ForkJoinPool.commonPool().invoke(new ChunkTask(buffer, chunks, 0, chunks.length - 1));
+			} catch (RuntimeException e) {
+				log.log(Level.WARNING, "Parallel parse failed, streaming instead; file=" + xmlFile, e);
+				this.fromXmlStream(xmlFile, orders);
+				return;
+			}
+		}
+		orders.addAll(parsed);
+	}
+
+	/**
+	 * Find the chunk boundaries; each is the offset of a top-level Orders start tag except the last, which is the end
+	 * of the last Orders element. Everything before the first boundary (prolog and root start tag) and after the last
+	 * (root end tag) is wrapped around each chunk when it is parsed.
+	 */
+	private int[] split(ByteBuffer buffer, int chunkBytes) {
+		int[] chunks = new int[16];
+		int count = 0;
+		int end = -1;
+		final int limit = buffer.limit();
+		for (int i = 0; i < (limit - ORDERS_TAG.length - 2); i++) {
+			if (buffer.get(i) != '<') {
+				continue;
+			}
+			final boolean close = buffer.get(i + 1) == '/';
+			final int name = close ? i + 2 : i + 1;
+			if (!this.isOrdersTag(buffer, name)) {
+				continue;
+			}
+			if (close) {
+				end = name + ORDERS_TAG.length + 1;
+			} else if ((count == 0) || ((i - chunks[count - 1]) >= chunkBytes)) {
+				if (count == chunks.length) {
+					chunks = Arrays.copyOf(chunks, count * 2);
+				}
+				chunks[count++] = i;
+			}
+		}
+		if ((count == 0) || (end <= chunks[count - 1])) {
+			return new int[0];
+		}
+		chunks = Arrays.copyOf(chunks, count + 1);
+		chunks[count] = end;
+		return chunks;
+	}
+
+	private boolean isOrdersTag(ByteBuffer buffer, int offset) {
+		for (int i = 0; i < ORDERS_TAG.length; i++) {
+			if (buffer.get(offset + i) != ORDERS_TAG[i]) {
+				return false;
+			}
+		}
+		final byte next = buffer.get(offset + ORDERS_TAG.length);
+		return (next == '>') || (next == '/') || Character.isWhitespace(next);
+	}
+
+	/**
+	 * Parse the chunks [from, to) and merge them in document order.
+	 */
+	private class ChunkTask extends RecursiveTask<List<Order>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final ByteBuffer buffer;
+		private final int[] chunks;
+		private final int from;
+		private final int to;
+
+		ChunkTask(ByteBuffer buffer, int[] chunks, int from, int to) {
+			this.buffer = buffer;
+			this.chunks = chunks;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected List<Order> compute() {
+			if ((this.to - this.from) == 1) {
+				return this.parse(this.chunks[this.from], this.chunks[this.to]);
+			}
+			final int mid = (this.from + this.to) >>> 1;
+			final ChunkTask left = new ChunkTask(this.buffer, this.chunks, this.from, mid);
+			left.fork();
+			final List<Order> right = new ChunkTask(this.buffer, this.chunks, mid, this.to).compute();
+			final List<Order> merged = left.join();
+			merged.addAll(right);
+			return merged;
+		}
+
+		private List<Order> parse(int start, int end) {
+			final List<Order> orders = new ArrayList<>();
+			final InputStream in = new SequenceInputStream(Collections.enumeration(Arrays.asList( //
+					this.slice(0, this.chunks[0]), //
+					this.slice(start, end), //
+					this.slice(this.chunks[this.chunks.length - 1], this.buffer.limit()))));
+			try {
+				OrderXmlTransformer.this.fromXmlStream(in, orders::add);
+			} catch (Exception e) {
+				throw new RuntimeException("Unable to parse orders at bytes " + start + "-" + end, e);
+			}
+			return orders;
+		}
+
+		private InputStream slice(int start, int end) {
+			final ByteBuffer slice = this.buffer.duplicate();
+			slice.position(start).limit(end);
+			return new ByteBufferInputStream(slice);
+		}
+	}
+
+	/**
+	 * Reader is positioned on the Orders START_ELEMENT and is left on its END_ELEMENT.
+	 *
+	 * @return the order or NULL if skipped
+	 */
+	private Order fromXmlOrder(XMLStreamReader reader) throws XMLStreamException {
+		// Hold the columns until the OrderID shows it isn't skipped; it is normally the first.
+		final List<String> pending = new ArrayList<>();
+		Order order = null;
+		OrderDetail detail = null;
+		while (true) {
+			final int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				final String key = reader.getLocalName();
+				if (detail != null) {
+					detail.add(key, XmlTool.getElementText(reader));
+					continue;
+				}
+				if (order == null) {
+					if (Xml.ORDER_ID.equals(key)) {
+						final String v = XmlTool.getElementText(reader);
+						if (this.isSkipped(v)) {
+							XmlTool.skipElement(reader, 1);
+							return null;
+						}
+						pending.add(key);
+						pending.add(v);
+						order = this.newOrder(pending);
+						continue;
+					} else if (Xml.ORDER_DETAILS.equals(key)) {
+						order = this.newOrder(pending);
+					}
+				}
+				if (Xml.ORDER_DETAILS.equals(key)) {
+					detail = new OrderDetail();
+				} else if (order != null) {
+					order.add(key, XmlTool.getElementText(reader));
+				} else {
+					pending.add(key);
+					pending.add(XmlTool.getElementText(reader));
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				if (detail != null) {
+					order.add(detail);
+					detail = null;
+				} else {
+					return (order != null) ? order : this.newOrder(pending);
+				}
+			}
+		}
+	}
+
+	private Order newOrder(List<String> columns) {
+		final Order order = new Order();
+		for (int i = 0; i < columns.size(); i += 2) {
+			order.add(columns.get(i), columns.get(i + 1));
+		}
+		return order;
+	}
+
 	private Order fromXmlOrder(Element orderElement) {
 		final Order order = new Order();
 		final NodeList oChildren = orderElement.getChildNodes();
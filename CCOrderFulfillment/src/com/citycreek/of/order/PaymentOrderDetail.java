@@ -2,7 +2,7 @@ package com.citycreek.of.order;
 
 public class PaymentOrderDetail extends OrderDetail {
 
-	public PaymentOrderDetail(String type, double amount) {
+	public PaymentOrderDetail(String type, long amount) {
 		super(type, amount);
 	}
 }
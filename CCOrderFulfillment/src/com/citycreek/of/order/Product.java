@@ -0,0 +1,74 @@
+package com.citycreek.of.order;
+
+import java.util.Objects;
+
+import com.cjc.util.Money;
+
+/**
+ * A product as sold on an order line: code, name and unit price. Immutable; the instances held by order lines come
+ * from the {@link ProductCatalog}, so a product sold on many orders is held once.
+ */
+public final class Product {
+
+	static final Product NONE = new Product("", "", 0L);
+
+	private final String code;
+	private final String name;
+	private final long price; // Money
+
+	Product(String code, String name, long price) {
+		this.code = code;
+		this.name = name;
+		this.price = price;
+	}
+
+	public String getCode() {
+		return this.code;
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * @return the unit price as {@link Money}
+	 */
+	public long getPrice() {
+		return this.price;
+	}
+
+	Product withCode(String code) {
+		return new Product(code, this.name, this.price);
+	}
+
+	Product withName(String name) {
+		return new Product(this.code, name, this.price);
+	}
+
+	Product withPrice(long price) {
+		return new Product(this.code, this.name, price);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(this.code, this.name, this.price);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof Product)) {
+			return false;
+		}
+		final Product other = (Product) obj;
+		return (this.price == other.price) && Objects.equals(this.code, other.code)
+				&& Objects.equals(this.name, other.name);
+	}
+
+	@Override
+	public String toString() {
+		return this.code + " " + this.name + " " + Money.toString(this.price);
+	}
+}
@@ -0,0 +1,50 @@
+package com.citycreek.of.order;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The distinct products seen while reading orders. Order lines share the catalog's {@link Product} instances, and
+ * products with the same code share the code string, so comparing codes mostly compares references.
+ * <p>
+ * Thread safe; orders can be read on several threads.
+ */
+public final class ProductCatalog {
+
+	private static final ProductCatalog INSTANCE = new ProductCatalog();
+
+	private final ConcurrentMap<Product, Product> products = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, String> codes = new ConcurrentHashMap<>();
+
+	private ProductCatalog() {
+	}
+
+	public static ProductCatalog get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @return the catalog's instance equal to the product, added if new
+	 */
+	public Product intern(Product product) {
+		final Product existing = this.products.get(product);
+		if (existing != null) {
+			return existing;
+		}
+		final Product shared = new Product(this.internCode(product.getCode()), product.getName(), product.getPrice());
+		final Product raced = this.products.putIfAbsent(shared, shared);
+		return (raced != null) ? raced : shared;
+	}
+
+	/**
+	 * @return the number of distinct products
+	 */
+	public int size() {
+		return this.products.size();
+	}
+
+	private String internCode(String code) {
+		final String existing = this.codes.putIfAbsent(code, code);
+		return (existing != null) ? existing : code;
+	}
+}
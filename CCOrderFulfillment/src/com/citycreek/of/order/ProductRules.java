@@ -0,0 +1,117 @@
+package com.citycreek.of.order;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.cjc.util.LangUtil;
+
+/**
+ * An immutable, compiled list of product codes matched case-insensitively, ignoring surrounding white space. A code
+ * ending in '*' is a prefix rule, e.g. DSC-* matches DSC-1 and DSC-DISCOUNT.
+ * <p>
+ * Exact codes are kept in an open-addressing table hashed on upper case characters, so a match neither trims nor
+ * upper cases the product code and doesn't allocate.
+ */
+public final class ProductRules {
+
+	public static final ProductRules NONE = compile("");
+
+	private final List<String> rules; // normalized, in the order given
+	private final String[] codes; // hash table of exact codes, NULL for empty slots
+	private final int mask;
+	private final String[] prefixes;
+
+	private ProductRules(List<String> rules) {
+		this.rules = Collections.unmodifiableList(rules);
+		final List<String> prefixList = new ArrayList<>();
+		int exact = 0;
+		for (String rule : rules) {
+			if (rule.endsWith("*")) {
+				prefixList.add(rule.substring(0, rule.length() - 1));
+			} else {
+				exact++;
+			}
+		}
+		this.prefixes = prefixList.toArray(new String[prefixList.size()]);
+
+		int capacity = 8;
+		while (capacity < (exact * 2)) {
+			capacity <<= 1;
+		}
+		this.codes = new String[capacity];
+		this.mask = capacity - 1;
+		for (String rule : rules) {
+			if (!rule.endsWith("*")) {
+				int i = hash(rule, 0, rule.length()) & this.mask;
+				while ((this.codes[i] != null) && !this.codes[i].equals(rule)) {
+					i = (i + 1) & this.mask;
+				}
+				this.codes[i] = rule;
+			}
+		}
+	}
+
+	/**
+	 * @param list comma separated product codes
+	 */
+	public static ProductRules compile(String list) {
+		final List<String> rules = new ArrayList<>();
+		for (String rule : list.split(",")) {
+			if (LangUtil.hasValue(rule)) {
+				rules.add(rule.trim().toUpperCase());
+			}
+		}
+		return new ProductRules(rules);
+	}
+
+	/**
+	 * @return true if the product code matches a rule
+	 */
+	public boolean matches(String productCode) {
+		int start = 0;
+		int end = productCode.length();
+		while ((start < end) && (productCode.charAt(start) <= ' ')) {
+			start++;
+		}
+		while ((end > start) && (productCode.charAt(end - 1) <= ' ')) {
+			end--;
+		}
+		final int length = end - start;
+
+		int i = hash(productCode, start, end) & this.mask;
+		String code;
+		while ((code = this.codes[i]) != null) {
+			if ((code.length() == length) && code.regionMatches(true, 0, productCode, start, length)) {
+				return true;
+			}
+			i = (i + 1) & this.mask;
+		}
+		for (String prefix : this.prefixes) {
+			if ((prefix.length() <= length) && prefix.regionMatches(true, 0, productCode, start, prefix.length())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the rules, normalized, in the order given
+	 */
+	public List<String> getRules() {
+		return this.rules;
+	}
+
+	@Override
+	public String toString() {
+		return this.rules.toString();
+	}
+
+	private static int hash(String s, int start, int end) {
+		int h = 0;
+		for (int i = start; i < end; i++) {
+			h = (31 * h) + Character.toUpperCase(s.charAt(i));
+		}
+		return h ^ (h >>> 16);
+	}
+}
@@ -3,7 +3,7 @@ package com.citycreek.of.order;
 public class PurchaseOrderDetail extends OrderDetail {
 
 	public PurchaseOrderDetail(String poNumber) {
-		super("PONUM", 0.0);
+		super("PONUM", 0);
 		this.add("ProductName", poNumber);
 	}
 
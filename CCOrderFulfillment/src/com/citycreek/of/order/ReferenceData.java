@@ -0,0 +1,150 @@
+package com.citycreek.of.order;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import com.citycreek.of.AppProperties;
+import com.cjc.util.LangUtil;
+import com.cjc.util.PropertiesUtil;
+
+/**
+ * The shipping and payment method names by id, compiled from csv.ShipMethodMap and csv.PaymentMethodMap into arrays
+ * indexed by id. Immutable apart from remembering which unknown ids were already reported, each is reported once.
+ */
+public final class ReferenceData {
+
+	private static final Logger log = Logger.getLogger(ReferenceData.class.getName());
+
+	/** Used when csv.PaymentMethodMap isn't configured. */
+	public static final String DEFAULT_PAYMENT_METHODS = //
+			"5=Visa&6=MasterCard&7=American Express&8=Discover&12=PayPal Express Upgrade";
+
+	private static final int MAX_ID = 0xFFFF;
+
+	private static final String UNKNOWN_SHIP_METHOD = "Unknown shipping method: ";
+
+	private static volatile ReferenceData current = new ReferenceData(new String[0],
+			compile(AppProperties.PAYMENT_METHOD_MAP, DEFAULT_PAYMENT_METHODS));
+
+	private final String[] shipMethods;
+	private final String[] paymentMethods;
+	private final Set<String> reported = ConcurrentHashMap.newKeySet();
+
+	private ReferenceData(String[] shipMethods, String[] paymentMethods) {
+		this.shipMethods = shipMethods;
+		this.paymentMethods = paymentMethods;
+	}
+
+	/**
+	 * Compile the maps from the configuration and make them current.
+	 */
+	public static ReferenceData load(PropertiesUtil props) {
+		final ReferenceData data = new ReferenceData( //
+				compile(AppProperties.SHIPPING_METHOD_MAP, props.getRequired(AppProperties.SHIPPING_METHOD_MAP)),
+				compile(AppProperties.PAYMENT_METHOD_MAP,
+						props.getOptional(AppProperties.PAYMENT_METHOD_MAP, DEFAULT_PAYMENT_METHODS)));
+		current = data;
+		return data;
+	}
+
+	public static ReferenceData get() {
+		return current;
+	}
+
+	/**
+	 * @param id the parsed ShippingMethodID, -1 if not a number
+	 * @param rawId the ShippingMethodID as exported
+	 * @return the ship method name, or the raw id if unknown
+	 */
+	public String getShipMethod(int id, String rawId) {
+		final String method = lookup(this.shipMethods, id);
+		if (method != null) {
+			return method;
+		}
+		if (this.reported.add("ship:" + rawId)) {
+			System.out.println("WARNING: Unknown shipping method: " + rawId);
+			log.warning("Missing shipping method id: " + rawId);
+		}
+		return rawId;
+	}
+
+	/**
+	 * As {@link #getShipMethod(int, String)}, but an unknown id is added to the warnings, every time, for the caller to
+	 * report; steps run on several threads, so the repeats are only left out by {@link #isFirstReport(String)} once the
+	 * warnings are merged.
+	 */
+	public String getShipMethod(int id, String rawId, List<String> warnings) {
+		final String method = lookup(this.shipMethods, id);
+		if (method != null) {
+			return method;
+		}
+		warnings.add(UNKNOWN_SHIP_METHOD + rawId);
+		return rawId;
+	}
+
+	/**
+	 * Called for the merged warnings in order, from one thread, so the first of the repeats is the one reported.
+	 *
+	 * @return false if the warning is of an unknown shipping method that was already reported
+	 */
+	public boolean isFirstReport(String warning) {
+		if (!warning.startsWith(UNKNOWN_SHIP_METHOD)) {
+			return true;
+		}
+		return this.reported.add("ship:" + warning.substring(UNKNOWN_SHIP_METHOD.length()));
+	}
+
+	/**
+	 * @return the payment method name, empty if unknown
+	 */
+	public String getPaymentMethod(int id) {
+		final String method = lookup(this.paymentMethods, id);
+		if (method != null) {
+			return method;
+		}
+		if (this.reported.add("payment:" + id)) {
+			log.warning("Missing payment method id: " + id);
+		}
+		return "";
+	}
+
+	private static String lookup(String[] names, int id) {
+		return ((id >= 0) && (id < names.length)) ? names[id] : null;
+	}
+
+	/**
+	 * @param map id=name pairs separated by '&'
+	 * @return the names indexed by id, NULL for ids not in the map
+	 */
+	private static String[] compile(String property, String map) {
+		final Properties pairs = LangUtil.fromString(map);
+		int max = -1;
+		for (String key : pairs.stringPropertyNames()) {
+			max = Math.max(max, parseId(property, key));
+		}
+		final String[] names = new String[max + 1];
+		for (String key : pairs.stringPropertyNames()) {
+			final String name = pairs.getProperty(key);
+			if (LangUtil.hasValue(name)) {
+				names[parseId(property, key)] = name;
+			}
+		}
+		return names;
+	}
+
+	private static int parseId(String property, String key) {
+		final int id;
+		try {
+			id = Integer.parseInt(key.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(property + ": id is not a number, " + key, e);
+		}
+		if ((id < 0) || (id > MAX_ID)) {
+			throw new IllegalArgumentException(property + ": id out of range 0-" + MAX_ID + ", " + key);
+		}
+		return id;
+	}
+}
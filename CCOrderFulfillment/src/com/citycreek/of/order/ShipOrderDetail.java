@@ -4,13 +4,13 @@ import com.cjc.util.LangUtil;
 
 public class ShipOrderDetail extends OrderDetail {
 
-	public ShipOrderDetail(String method, double amount) {
+	public ShipOrderDetail(String method, long amount) {
 		super("Shipping", amount);
 		if (LangUtil.hasValue(method)) {
 			this.add("ProductName", method);
 		}
-		if (amount > 0.0) {
-			this.add("ProductPrice", Double.toString(amount));
+		if (amount > 0) {
+			this.setProductPrice(amount);
 		}
 		this.add("Quantity", "1");
 	}
@@ -4,10 +4,20 @@
  */
 package com.cjc.util;
 
+import java.io.BufferedInputStream;
 import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
 
 /**
  * @author <a href="mailto:brian@code42.com">Brian Bispala </a>
@@ -16,6 +26,8 @@ public class IOUtil {
 
 	private static final Logger log = Logger.getLogger(IOUtil.class.getName());
 
+	private static final int BUFFER_SIZE = 64 * 1024;
+
 	public static void close(Closeable c) {
 		if (c != null) {
 			try {
@@ -26,4 +38,66 @@ public class IOUtil {
 			}
 		}
 	}
+
+	/**
+	 * @return the hex SHA-256 digest of the file content
+	 */
+	public static String checksum(Path file) throws IOException {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 not available", e);
+		}
+		final byte[] buffer = new byte[64 * 1024];
+		try (InputStream in = Files.newInputStream(file)) {
+			int n;
+			while ((n = in.read(buffer)) > 0) {
+				digest.update(buffer, 0, n);
+			}
+		}
+		final StringBuilder hex = new StringBuilder(64);
+		for (byte b : digest.digest()) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * @return true if the file starts with the gzip magic bytes
+	 */
+	public static boolean isCompressed(File file) throws IOException {
+		try (InputStream in = new FileInputStream(file)) {
+			return isGzipMagic(in.read(), in.read());
+		}
+	}
+
+	/**
+	 * Open the file for buffered reading, decompressing it as it is read if it is gzip.
+	 */
+	public static InputStream newInputStream(File file) throws IOException {
+		final InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+		in.mark(2);
+		final boolean compressed = isGzipMagic(in.read(), in.read());
+		in.reset();
+		return compressed ? new BufferedInputStream(new GZIPInputStream(in, BUFFER_SIZE), BUFFER_SIZE) : in;
+	}
+
+	/**
+	 * @return the number of bytes copied
+	 */
+	public static long copy(InputStream in, OutputStream out) throws IOException {
+		final byte[] buffer = new byte[BUFFER_SIZE];
+		long count = 0;
+		int n;
+		while ((n = in.read(buffer)) > 0) {
+			out.write(buffer, 0, n);
+			count += n;
+		}
+		return count;
+	}
+
+	private static boolean isGzipMagic(int b0, int b1) {
+		return (b0 | (b1 << 8)) == GZIPInputStream.GZIP_MAGIC; // little endian, EOF (-1) never matches
+	}
 }
@@ -0,0 +1,202 @@
+package com.cjc.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A map from primitive longs to values; open addressing with linear probing, no boxed keys and no entry objects. Uses
+ * the same hashing and sizing as {@link LongHashSet}.
+ * <p>
+ * Not thread safe.
+ *
+ * @param <V> the value type
+ */
+public class LongHashMap<V> {
+
+	private static final long EMPTY = 0L; // zero is tracked separately
+
+	private long[] keys;
+	private Object[] values;
+	private int mask;
+	private int size = 0;
+	private boolean hasZero = false;
+	private Object zeroValue;
+
+	public LongHashMap() {
+		this(0);
+	}
+
+	/**
+	 * @param expected the number of entries expected; the map is sized to hold them without growing
+	 */
+	public LongHashMap(int expected) {
+		this.allocate(LongHashSet.capacityFor(expected));
+	}
+
+	/**
+	 * @return the previous value, NULL if none
+	 */
+	public V put(long key, V value) {
+		if (key == EMPTY) {
+			final V previous = this.zeroValue();
+			if (!this.hasZero) {
+				this.hasZero = true;
+				this.size++;
+			}
+			this.zeroValue = value;
+			return previous;
+		}
+		int i = LongHashSet.slot(key, this.mask);
+		while (this.keys[i] != EMPTY) {
+			if (this.keys[i] == key) {
+				final V previous = this.valueAt(i);
+				this.values[i] = value;
+				return previous;
+			}
+			i = (i + 1) & this.mask;
+		}
+		this.keys[i] = key;
+		this.values[i] = value;
+		this.size++;
+		if ((this.size * 2) > this.keys.length) {
+			this.rehash(this.keys.length * 2);
+		}
+		return null;
+	}
+
+	/**
+	 * @return the value, NULL if none
+	 */
+	public V get(long key) {
+		if (key == EMPTY) {
+			return this.zeroValue();
+		}
+		int i = LongHashSet.slot(key, this.mask);
+		while (this.keys[i] != EMPTY) {
+			if (this.keys[i] == key) {
+				return this.valueAt(i);
+			}
+			i = (i + 1) & this.mask;
+		}
+		return null;
+	}
+
+	public boolean containsKey(long key) {
+		if (key == EMPTY) {
+			return this.hasZero;
+		}
+		int i = LongHashSet.slot(key, this.mask);
+		while (this.keys[i] != EMPTY) {
+			if (this.keys[i] == key) {
+				return true;
+			}
+			i = (i + 1) & this.mask;
+		}
+		return false;
+	}
+
+	/**
+	 * @return the removed value, NULL if none
+	 */
+	public V remove(long key) {
+		if (key == EMPTY) {
+			final V previous = this.zeroValue();
+			if (this.hasZero) {
+				this.hasZero = false;
+				this.zeroValue = null;
+				this.size--;
+			}
+			return previous;
+		}
+		int i = LongHashSet.slot(key, this.mask);
+		while (this.keys[i] != EMPTY) {
+			if (this.keys[i] == key) {
+				final V previous = this.valueAt(i);
+				this.delete(i);
+				this.size--;
+				return previous;
+			}
+			i = (i + 1) & this.mask;
+		}
+		return null;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * @return a copy of the values, in no particular order
+	 */
+	public List<V> values() {
+		final List<V> result = new ArrayList<>(this.size);
+		if (this.hasZero) {
+			result.add(this.zeroValue());
+		}
+		for (int i = 0; i < this.keys.length; i++) {
+			if (this.keys[i] != EMPTY) {
+				result.add(this.valueAt(i));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Empty slot i, shifting back any later entry of the same probe run that would no longer be reachable.
+	 */
+	private void delete(int i) {
+		int gap = i;
+		int j = i;
+		while (true) {
+			j = (j + 1) & this.mask;
+			if (this.keys[j] == EMPTY) {
+				break;
+			}
+			final int home = LongHashSet.slot(this.keys[j], this.mask);
+			// move j into the gap unless its home lies cyclically in (gap, j]
+			if (((j - home) & this.mask) >= ((j - gap) & this.mask)) {
+				this.keys[gap] = this.keys[j];
+				this.values[gap] = this.values[j];
+				gap = j;
+			}
+		}
+		this.keys[gap] = EMPTY;
+		this.values[gap] = null;
+	}
+
+	private void rehash(int capacity) {
+		final long[] oldKeys = this.keys;
+		final Object[] oldValues = this.values;
+		this.allocate(capacity);
+		for (int o = 0; o < oldKeys.length; o++) {
+			if (oldKeys[o] != EMPTY) {
+				int i = LongHashSet.slot(oldKeys[o], this.mask);
+				while (this.keys[i] != EMPTY) {
+					i = (i + 1) & this.mask;
+				}
+				this.keys[i] = oldKeys[o];
+				this.values[i] = oldValues[o];
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		this.keys = new long[capacity];
+		this.values = new Object[capacity];
+		this.mask = capacity - 1;
+	}
+
+	@SuppressWarnings("unchecked")
+	private V valueAt(int i) {
+		return (V) this.values[i];
+	}
+
+	@SuppressWarnings("unchecked")
+	private V zeroValue() {
+		return (V) this.zeroValue;
+	}
+}
@@ -0,0 +1,144 @@
+package com.cjc.util;
+
+import java.util.Arrays;
+
+/**
+ * A set of primitive longs; open addressing with linear probing, no boxing and no entry objects.
+ * <p>
+ * Not thread safe.
+ */
+public class LongHashSet {
+
+	private static final long EMPTY = 0L; // zero is tracked separately
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] keys;
+	private int mask;
+	private int size = 0;
+	private boolean hasZero = false;
+
+	public LongHashSet() {
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * @param expected the number of values expected; the set is sized to hold them without growing
+	 */
+	public LongHashSet(int expected) {
+		this.allocate(capacityFor(expected));
+	}
+
+	/**
+	 * @return true if the value was added, false if already present
+	 */
+	public boolean add(long value) {
+		if (value == EMPTY) {
+			if (this.hasZero) {
+				return false;
+			}
+			this.hasZero = true;
+			this.size++;
+			return true;
+		}
+		int i = slot(value, this.mask);
+		while (this.keys[i] != EMPTY) {
+			if (this.keys[i] == value) {
+				return false;
+			}
+			i = (i + 1) & this.mask;
+		}
+		this.keys[i] = value;
+		this.size++;
+		if ((this.size * 2) > this.keys.length) {
+			this.rehash(this.keys.length * 2);
+		}
+		return true;
+	}
+
+	public boolean contains(long value) {
+		if (value == EMPTY) {
+			return this.hasZero;
+		}
+		int i = slot(value, this.mask);
+		while (this.keys[i] != EMPTY) {
+			if (this.keys[i] == value) {
+				return true;
+			}
+			i = (i + 1) & this.mask;
+		}
+		return false;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * @return the values, in no particular order
+	 */
+	public long[] toArray() {
+		final long[] values = new long[this.size];
+		int n = 0;
+		if (this.hasZero) {
+			values[n++] = 0L;
+		}
+		for (long key : this.keys) {
+			if (key != EMPTY) {
+				values[n++] = key;
+			}
+		}
+		return values;
+	}
+
+	@Override
+	public String toString() {
+		final long[] values = this.toArray();
+		Arrays.sort(values);
+		return Arrays.toString(values);
+	}
+
+	private void rehash(int capacity) {
+		final long[] old = this.keys;
+		this.allocate(capacity);
+		this.size = this.hasZero ? 1 : 0;
+		for (long key : old) {
+			if (key != EMPTY) {
+				int i = slot(key, this.mask);
+				while (this.keys[i] != EMPTY) {
+					i = (i + 1) & this.mask;
+				}
+				this.keys[i] = key;
+				this.size++;
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		this.keys = new long[capacity];
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * @return the home slot of the value; the bits are mixed so sequential ids spread over the table
+	 */
+	static int slot(long value, int mask) {
+		long h = value * 0x9E3779B97F4A7C15L;
+		h ^= (h >>> 32);
+		return (int) h & mask;
+	}
+
+	/**
+	 * @return a power of two capacity that keeps the load at or below one half
+	 */
+	static int capacityFor(int expected) {
+		final long wanted = Math.max(MIN_CAPACITY, (long) expected * 2);
+		if (wanted > (1 << 30)) {
+			return 1 << 30;
+		}
+		return Integer.highestOneBit((int) wanted - 1) << 1;
+	}
+}
@@ -0,0 +1,117 @@
+package com.cjc.util;
+
+/**
+ * Money as a fixed-point long in units of 1/10000, the precision of the amounts Volusion exports ("32.9000"). Parsing
+ * and formatting work on the characters directly and don't allocate.
+ */
+public class Money {
+
+	public static final int SCALE = 4;
+	public static final long ONE = 10000L;
+
+	private static final long MAX_PLAIN = 10000000L * ONE; // Double.toString switches to E notation at 10^7
+	private static final long MIN_PLAIN = ONE / 1000; // and below 10^-3
+
+	/**
+	 * Parse a decimal amount, e.g. "-1302.9800". Surrounding white space is ignored and digits past the fourth decimal
+	 * round half up.
+	 *
+	 * @throws NumberFormatException if not a plain decimal number or out of range
+	 */
+	public static long parse(CharSequence text) {
+		int start = 0;
+		int end = text.length();
+		while ((start < end) && Character.isWhitespace(text.charAt(start))) {
+			start++;
+		}
+		while ((end > start) && Character.isWhitespace(text.charAt(end - 1))) {
+			end--;
+		}
+		boolean negative = false;
+		if ((start < end) && ((text.charAt(start) == '-') || (text.charAt(start) == '+'))) {
+			negative = text.charAt(start) == '-';
+			start++;
+		}
+		long units = 0;
+		int digits = 0;
+		int decimals = -1; // -1 until the decimal point
+		boolean roundUp = false;
+		for (int i = start; i < end; i++) {
+			final char c = text.charAt(i);
+			if (c == '.') {
+				if (decimals >= 0) {
+					throw new NumberFormatException("Not an amount: " + text);
+				}
+				decimals = 0;
+			} else if ((c >= '0') && (c <= '9')) {
+				digits++;
+				if (decimals < SCALE) {
+					units = (units * 10) + (c - '0');
+					if (units > (Long.MAX_VALUE / ONE)) {
+						throw new NumberFormatException("Amount out of range: " + text);
+					}
+					if (decimals >= 0) {
+						decimals++;
+					}
+				} else if (decimals == SCALE) {
+					roundUp = c >= '5';
+					decimals++;
+				}
+			} else {
+				throw new NumberFormatException("Not an amount: " + text);
+			}
+		}
+		if (digits == 0) {
+			throw new NumberFormatException("Not an amount: " + text);
+		}
+		for (int d = Math.max(decimals, 0); d < SCALE; d++) {
+			units *= 10;
+		}
+		if (roundUp) {
+			units++;
+		}
+		return negative ? -units : units;
+	}
+
+	/**
+	 * @return the amount, 0 if empty
+	 * @throws NumberFormatException if not a plain decimal number
+	 */
+	public static long parseOptional(String text) {
+		return LangUtil.hasValue(text) ? parse(text) : 0L;
+	}
+
+	/**
+	 * Append the amount the way Double.toString prints it: no trailing zeros but at least one decimal, e.g. "32.9",
+	 * "30.0", "-1302.98". Amounts Double.toString would print in E notation are printed that way too.
+	 */
+	public static StringBuilder appendTo(StringBuilder sb, long amount) {
+		final long abs = Math.abs(amount);
+		if ((abs != 0) && ((abs < MIN_PLAIN) || (abs >= MAX_PLAIN))) {
+			return sb.append(toDouble(amount));
+		}
+		if (amount < 0) {
+			sb.append('-');
+		}
+		sb.append(abs / ONE).append('.');
+		long fraction = abs % ONE;
+		if (fraction == 0) {
+			return sb.append('0');
+		}
+		long unit = ONE / 10;
+		while (fraction != 0) {
+			sb.append((char) ('0' + (fraction / unit)));
+			fraction %= unit;
+			unit /= 10;
+		}
+		return sb;
+	}
+
+	public static String toString(long amount) {
+		return appendTo(new StringBuilder(24), amount).toString();
+	}
+
+	public static double toDouble(long amount) {
+		return amount / (double) ONE;
+	}
+}
@@ -123,7 +123,7 @@ public class PropertiesUtil {
 		try {
 			if (okToSave) {
 				if (!file.exists()) {
-					file.mkdirs();
+					file.getAbsoluteFile().getParentFile().mkdirs();
 					file.createNewFile();
 				}
 				out = new FileOutputStream(file);
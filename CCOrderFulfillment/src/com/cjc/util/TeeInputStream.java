@@ -0,0 +1,76 @@
+package com.cjc.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Copies every byte read to an OutputStream. On close the rest of the input is drained into the copy, so the copy is
+ * always the complete stream even when the reader stops early.
+ */
+public class TeeInputStream extends FilterInputStream {
+
+	private final OutputStream copy;
+
+	public TeeInputStream(InputStream in, OutputStream copy) {
+		super(in);
+		this.copy = copy;
+	}
+
+	@Override
+	public int read() throws IOException {
+		final int b = super.read();
+		if (b != -1) {
+			this.copy.write(b);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		final int n = super.read(b, off, len);
+		if (n > 0) {
+			this.copy.write(b, off, n);
+		}
+		return n;
+	}
+
+	/**
+	 * Skipped bytes are read, they still have to be copied.
+	 */
+	@Override
+	public long skip(long n) throws IOException {
+		final byte[] buffer = new byte[(int) Math.min(8192, Math.max(n, 0))];
+		long skipped = 0;
+		while (skipped < n) {
+			final int read = this.read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+			if (read < 0) {
+				break;
+			}
+			skipped += read;
+		}
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			final byte[] buffer = new byte[64 * 1024];
+			while (this.read(buffer, 0, buffer.length) >= 0) {
+				// drain the rest into the copy
+			}
+		} finally {
+			try {
+				super.close();
+			} finally {
+				this.copy.close();
+			}
+		}
+	}
+}
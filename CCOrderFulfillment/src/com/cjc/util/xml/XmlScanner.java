@@ -0,0 +1,503 @@
+package com.cjc.util.xml;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/**
+ * XmlScanner is a byte level reader for flat, record oriented UTF-8 xml such as the Volusion xmldata exports:
+ *
+ * <pre>
+ * &lt;root&gt;
+ *   &lt;Record&gt;
+ *     &lt;Field&gt;value&lt;/Field&gt;
+ *     &lt;Nested&gt;
+ *       &lt;Field&gt;value&lt;/Field&gt;
+ *     &lt;/Nested&gt;
+ *   &lt;/Record&gt;
+ * &lt;/root&gt;
+ * </pre>
+ *
+ * Element names are matched directly against the bytes and only the values of the wanted fields are decoded; the
+ * predefined and character entities and CDATA sections are handled. Anything outside this shape (attributes, a DTD,
+ * mixed content, other encodings, ...) results in a TransformerException so the caller can fall back to a general
+ * purpose parser.
+ * <p>
+ * Not thread safe; use one scanner per thread.
+ */
+public class XmlScanner {
+
+	/**
+	 * Receives the records as they are scanned.
+	 */
+	public interface Handler {
+
+		void startRecord();
+
+		void startNested();
+
+		/**
+		 * @param name the wanted field name as given to the scanner
+		 * @param value the decoded text content
+		 */
+		void field(String name, String value);
+
+		void endNested();
+
+		void endRecord();
+	}
+
+	private static final byte[] CDATA_START = bytes("<![CDATA[");
+	private static final byte[] CDATA_END = bytes("]]>");
+	private static final byte[] COMMENT_START = bytes("<!--");
+	private static final byte[] COMMENT_END = bytes("-->");
+	private static final byte[] PI_START = bytes("<?");
+	private static final byte[] PI_END = bytes("?>");
+	private static final byte[] XML_DECLARATION = bytes("<?xml ");
+
+	private final byte[] record;
+	private final byte[] nested;
+	private final String[] fieldNames;
+	private final byte[][] fields;
+	private final String[] nestedFieldNames;
+	private final byte[][] nestedFields;
+
+	private ByteBuffer buffer;
+	private int pos;
+	private byte[] value = new byte[256];
+
+	/**
+	 * @param record the name of the repeating record element
+	 * @param fields the record fields to decode
+	 * @param nested the name of the element nested in a record, NULL if none
+	 * @param nestedFields the nested element fields to decode
+	 */
+	public XmlScanner(String record, Collection<String> fields, String nested, Collection<String> nestedFields) {
+		this.record = bytes(record);
+		this.fieldNames = fields.toArray(new String[fields.size()]);
+		this.fields = bytes(this.fieldNames);
+		this.nested = (nested != null) ? bytes(nested) : null;
+		this.nestedFieldNames = nestedFields.toArray(new String[nestedFields.size()]);
+		this.nestedFields = bytes(this.nestedFieldNames);
+	}
+
+	/**
+	 * Scan the whole document in the buffer, from position 0 to the limit.
+	 *
+	 * @param buffer
+	 * @param handler
+	 * @throws TransformerException if the content isn't the expected shape
+	 */
+	public void scan(ByteBuffer buffer, Handler handler) throws TransformerException {
+		this.buffer = buffer;
+		this.pos = 0;
+		final long start = System.nanoTime();
+		try {
+			// UTF-8 byte order mark
+			if (this.startsWith(new byte[] { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF })) {
+				this.pos += 3;
+			}
+			if (this.startsWith(XML_DECLARATION)) {
+				final int end = this.indexOf(PI_END);
+				final String declaration = new String(this.bytesAt(this.pos, end), StandardCharsets.US_ASCII);
+				if (declaration.contains("encoding") && !declaration.toUpperCase().contains("UTF-8")) {
+					throw this.unexpected("encoding");
+				}
+				this.pos = end + PI_END.length;
+			}
+			this.skipMisc();
+			if (this.peek(1) == '!') {
+				throw this.unexpected("DTD");
+			}
+
+			// root
+			this.expect('<');
+			this.skipName();
+			this.skipWhitespace();
+			if (this.startsWith(bytes("/>"))) {
+				return;
+			}
+			this.expect('>');
+
+			while (true) {
+				this.skipMisc();
+				if (this.peek(1) == '/') {
+					break; // root end
+				}
+				this.expect('<');
+				this.expectName(this.record);
+				if (this.emptyElement()) {
+					handler.startRecord();
+					handler.endRecord();
+					continue;
+				}
+				handler.startRecord();
+				this.scanFields(this.record, this.fields, this.fieldNames, handler, true);
+				handler.endRecord();
+			}
+
+			this.pos += 2;
+			this.skipName();
+			this.skipWhitespace();
+			this.expect('>');
+			this.skipMisc();
+			if (this.pos != this.buffer.limit()) {
+				throw this.unexpected("content after root");
+			}
+		} catch (IndexOutOfBoundsException e) {
+			throw new TransformerException("Unexpected end of xml at byte " + this.pos);
+		} finally {
+			XmlTool.recordParse(this.pos, System.nanoTime() - start);
+			this.buffer = null;
+		}
+	}
+
+	/**
+	 * Scan the fields up to and including the end tag of the element.
+	 */
+	private void scanFields(byte[] element, byte[][] wanted, String[] names, Handler handler, boolean allowNested)
+			throws TransformerException {
+		while (true) {
+			this.skipMisc();
+			this.expect('<');
+			if (this.peek(0) == '/') {
+				this.pos++;
+				this.expectName(element);
+				this.skipWhitespace();
+				this.expect('>');
+				return;
+			}
+			if (allowNested && (this.nested != null) && this.matchName(this.nested)) {
+				this.pos += this.nested.length;
+				if (this.emptyElement()) {
+					handler.startNested();
+					handler.endNested();
+					continue;
+				}
+				handler.startNested();
+				this.scanFields(this.nested, this.nestedFields, this.nestedFieldNames, handler, false);
+				handler.endNested();
+				continue;
+			}
+			final int nameStart = this.pos;
+			this.skipName();
+			final int nameEnd = this.pos;
+			final int field = this.find(wanted, nameStart, nameEnd);
+			if (this.emptyElement()) {
+				if (field >= 0) {
+					handler.field(names[field], "");
+				}
+				continue;
+			}
+			final String v = this.text(field >= 0);
+			this.pos += 2; // </
+			if (!this.matchRange(nameStart, nameEnd)) {
+				throw this.unexpected("end tag");
+			}
+			this.pos += nameEnd - nameStart;
+			this.skipWhitespace();
+			this.expect('>');
+			if (field >= 0) {
+				handler.field(names[field], v);
+			}
+		}
+	}
+
+	/**
+	 * Read the text content up to the next end tag, leaving the position on its '&lt;'.
+	 *
+	 * @param decode false to skip the text without decoding it
+	 * @return the text or NULL if not decoded
+	 */
+	private String text(boolean decode) throws TransformerException {
+		final int start = this.pos;
+		int length = 0;
+		boolean raw = true; // nothing to decode so far
+		while (true) {
+			final byte b = this.buffer.get(this.pos);
+			if ((b == '<') || (b == '&') || (b == '\r')) {
+				if ((b == '<') && (this.peek(1) == '/')) {
+					break;
+				}
+				if (decode && raw) {
+					raw = false;
+					for (int i = start; i < this.pos; i++) {
+						length = this.put(length, this.buffer.get(i));
+					}
+				}
+			}
+			if (b == '<') {
+				if (!this.startsWith(CDATA_START)) {
+					throw this.unexpected("mixed content");
+				}
+				this.pos += CDATA_START.length;
+				final int end = this.indexOf(CDATA_END);
+				if (decode) {
+					for (int i = this.pos; i < end; i++) {
+						length = this.put(length, this.buffer.get(i));
+					}
+				}
+				this.pos = end + CDATA_END.length;
+			} else if (b == '&') {
+				final int end = this.indexOf((byte) ';');
+				if (decode) {
+					length = this.entity(length, this.pos + 1, end);
+				}
+				this.pos = end + 1;
+			} else if (b == '\r') {
+				// line ends are normalized to \n
+				if (decode) {
+					length = this.put(length, (byte) '\n');
+				}
+				this.pos++;
+				if (this.buffer.get(this.pos) == '\n') {
+					this.pos++;
+				}
+			} else {
+				if (decode && !raw) {
+					length = this.put(length, b);
+				}
+				this.pos++;
+			}
+		}
+		if (!decode) {
+			return null;
+		}
+		if (raw) {
+			// the common case; copy straight from the buffer
+			length = this.pos - start;
+			if (length > this.value.length) {
+				this.value = new byte[length];
+			}
+			for (int i = 0; i < length; i++) {
+				this.value[i] = this.buffer.get(start + i);
+			}
+		}
+		return new String(this.value, 0, length, StandardCharsets.UTF_8);
+	}
+
+	private int entity(int length, int start, int end) throws TransformerException {
+		final String name = new String(this.bytesAt(start, end), StandardCharsets.US_ASCII);
+		switch (name) {
+		case "lt":
+			return this.put(length, (byte) '<');
+		case "gt":
+			return this.put(length, (byte) '>');
+		case "amp":
+			return this.put(length, (byte) '&');
+		case "quot":
+			return this.put(length, (byte) '"');
+		case "apos":
+			return this.put(length, (byte) '\'');
+		default:
+			if (!name.startsWith("#")) {
+				throw this.unexpected("entity &" + name + ";");
+			}
+			final int codePoint;
+			try {
+				codePoint = name.startsWith("#x") ? Integer.parseInt(name.substring(2), 16)
+						: Integer.parseInt(name.substring(1));
+			} catch (NumberFormatException e) {
+				throw this.unexpected("character reference &" + name + ";");
+			}
+			if (!Character.isValidCodePoint(codePoint)) {
+				throw this.unexpected("character reference &" + name + ";");
+			}
+			for (byte b : new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8)) {
+				length = this.put(length, b);
+			}
+			return length;
+		}
+	}
+
+	private int put(int length, byte b) {
+		if (length == this.value.length) {
+			final byte[] grown = new byte[length * 2];
+			System.arraycopy(this.value, 0, grown, 0, length);
+			this.value = grown;
+		}
+		this.value[length] = b;
+		return length + 1;
+	}
+
+	/**
+	 * After an element name; consume "/&gt;" or "&gt;".
+	 *
+	 * @return true if the element was empty
+	 */
+	private boolean emptyElement() throws TransformerException {
+		this.skipWhitespace();
+		if (this.buffer.get(this.pos) == '/') {
+			this.pos++;
+			this.expect('>');
+			return true;
+		}
+		this.expect('>');
+		return false;
+	}
+
+	/**
+	 * Skip whitespace, comments and processing instructions.
+	 */
+	private void skipMisc() {
+		while (true) {
+			this.skipWhitespace();
+			if (this.pos >= this.buffer.limit()) {
+				return;
+			}
+			if (this.startsWith(COMMENT_START)) {
+				this.pos = this.indexOf(COMMENT_END) + COMMENT_END.length;
+			} else if (this.startsWith(PI_START)) {
+				this.pos = this.indexOf(PI_END) + PI_END.length;
+			} else {
+				return;
+			}
+		}
+	}
+
+	private void skipWhitespace() {
+		final int limit = this.buffer.limit();
+		while (this.pos < limit) {
+			final byte b = this.buffer.get(this.pos);
+			if ((b != ' ') && (b != '\n') && (b != '\r') && (b != '\t')) {
+				return;
+			}
+			this.pos++;
+		}
+	}
+
+	private void skipName() throws TransformerException {
+		final int start = this.pos;
+		while (true) {
+			final byte b = this.buffer.get(this.pos);
+			if ((b == '>') || (b == '/') || (b == ' ') || (b == '\n') || (b == '\r') || (b == '\t')) {
+				break;
+			}
+			if ((b == '<') || (b == '=') || (b == '&')) {
+				throw this.unexpected("character in name");
+			}
+			this.pos++;
+		}
+		if (this.pos == start) {
+			throw this.unexpected("empty name");
+		}
+	}
+
+	private void expectName(byte[] name) throws TransformerException {
+		if (!this.matchName(name)) {
+			throw this.unexpected("element");
+		}
+		this.pos += name.length;
+	}
+
+	/**
+	 * @return true if the name at the position is exactly the given name
+	 */
+	private boolean matchName(byte[] name) {
+		if (!this.startsWith(name)) {
+			return false;
+		}
+		final byte next = this.buffer.get(this.pos + name.length);
+		return (next == '>') || (next == '/') || (next == ' ') || (next == '\n') || (next == '\r') || (next == '\t');
+	}
+
+	/**
+	 * @return true if the bytes at the position match the bytes of the range
+	 */
+	private boolean matchRange(int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (this.buffer.get(this.pos + (i - start)) != this.buffer.get(i)) {
+				return false;
+			}
+		}
+		final byte next = this.buffer.get(this.pos + (end - start));
+		return (next == '>') || (next == ' ') || (next == '\n') || (next == '\r') || (next == '\t');
+	}
+
+	/**
+	 * @return the index of the wanted name matching the bytes of the range, -1 if not wanted
+	 */
+	private int find(byte[][] wanted, int start, int end) {
+		final int length = end - start;
+		outer: for (int f = 0; f < wanted.length; f++) {
+			final byte[] name = wanted[f];
+			if (name.length != length) {
+				continue;
+			}
+			for (int i = 0; i < length; i++) {
+				if (name[i] != this.buffer.get(start + i)) {
+					continue outer;
+				}
+			}
+			return f;
+		}
+		return -1;
+	}
+
+	private boolean startsWith(byte[] bytes) {
+		if ((this.pos + bytes.length) > this.buffer.limit()) {
+			return false;
+		}
+		for (int i = 0; i < bytes.length; i++) {
+			if (this.buffer.get(this.pos + i) != bytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int indexOf(byte b) {
+		for (int i = this.pos;; i++) {
+			if (this.buffer.get(i) == b) {
+				return i;
+			}
+		}
+	}
+
+	private int indexOf(byte[] bytes) {
+		for (int i = this.pos;; i++) {
+			int j = 0;
+			while ((j < bytes.length) && (this.buffer.get(i + j) == bytes[j])) {
+				j++;
+			}
+			if (j == bytes.length) {
+				return i;
+			}
+		}
+	}
+
+	private byte peek(int offset) {
+		return this.buffer.get(this.pos + offset);
+	}
+
+	private void expect(char c) throws TransformerException {
+		if (this.buffer.get(this.pos) != c) {
+			throw this.unexpected("'" + (char) this.buffer.get(this.pos) + "', expected '" + c + "'");
+		}
+		this.pos++;
+	}
+
+	private byte[] bytesAt(int start, int end) {
+		final byte[] bytes = new byte[end - start];
+		for (int i = start; i < end; i++) {
+			bytes[i - start] = this.buffer.get(i);
+		}
+		return bytes;
+	}
+
+	private TransformerException unexpected(String what) {
+		return new TransformerException("Unexpected " + what + " at byte " + this.pos);
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[][] bytes(String[] s) {
+		final byte[][] bytes = new byte[s.length][];
+		for (int i = 0; i < s.length; i++) {
+			bytes[i] = bytes(s[i]);
+		}
+		return bytes;
+	}
+}
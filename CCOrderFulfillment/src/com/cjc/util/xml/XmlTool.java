@@ -4,13 +4,24 @@
  */
 package com.cjc.util.xml;
 
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
 
 import org.w3c.dom.Comment;
 import org.w3c.dom.Document;
@@ -33,13 +44,18 @@ public class XmlTool {
 	public static final String NIL = "nil";// null value
 	public static final char newLine = '\n';
 
+	private static final AtomicLong PARSE_COUNT = new AtomicLong();
+	private static final AtomicLong PARSE_BYTES = new AtomicLong();
+	private static final AtomicLong PARSE_NANOS = new AtomicLong();
+
 	public static void useInternalDocumentBuilderFactory() {
 		System.setProperty("javax.xml.parsers.DocumentBuilderFactory",
 				"com.sun.org.apache.xerces.internal.jaxp.DocumentBuilderFactoryImpl");
 	}
 
 	public static void log() {
-		log.config("XmlTool.factory=" + DocumentBuilderFactory.newInstance());
+		log.config("XmlTool.factory=" + Parsers.DOCUMENT_BUILDER_FACTORY);
+		log.config("XmlTool.stats=" + getStats());
 	}
 
 	/**
@@ -49,22 +65,93 @@ public class XmlTool {
 	 * @throws Exception
 	 */
 	public static Document newDocument() throws Exception {
-		final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-		final DocumentBuilder builder = factory.newDocumentBuilder();
+		final DocumentBuilder builder = Parsers.DOCUMENT_BUILDER.get();
+		builder.reset();
 		return builder.newDocument();
 	}
 
 	/**
-	 * Helper to return a Document parsed from the input stream.
+	 * Helper to return a Document parsed from the input stream. The builder
+	 * is reused by the calling thread and reset before each parse.
 	 * 
 	 * @param in
 	 * @return the parsed document
 	 * @throws Exception
 	 */
 	public static Document parseDocument(final InputStream in) throws Exception {
-		final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-		final DocumentBuilder builder = factory.newDocumentBuilder();
-		return builder.parse(in);
+		final DocumentBuilder builder = Parsers.DOCUMENT_BUILDER.get();
+		builder.reset();
+		final CountingInputStream counter = new CountingInputStream(in);
+		final long start = System.nanoTime();
+		try {
+			return builder.parse(counter);
+		} finally {
+			recordParse(counter.getCount(), System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Helper to create a stream reader over the input stream. The factory is
+	 * reused by the calling thread and coalesces adjacent text. The parse is
+	 * counted when the reader is closed.
+	 * 
+	 * @param in
+	 * @return the stream reader; close when done
+	 * @throws XMLStreamException
+	 */
+	public static XMLStreamReader createXMLStreamReader(final InputStream in) throws XMLStreamException {
+		final CountingInputStream counter = new CountingInputStream(in);
+		final long start = System.nanoTime();
+		return new StreamReaderDelegate(Parsers.XML_INPUT_FACTORY.get().createXMLStreamReader(counter)) {
+
+			private boolean closed = false;
+
+			@Override
+			public void close() throws XMLStreamException {
+				if (!this.closed) {
+					this.closed = true;
+					recordParse(counter.getCount(), System.nanoTime() - start);
+				}
+				super.close();
+			}
+		};
+	}
+
+	/*
+	 * STATISTICS
+	 */
+
+	/**
+	 * Count a completed parse.
+	 * 
+	 * @param bytes
+	 *            bytes read by the parser
+	 * @param nanos
+	 *            time spent parsing
+	 */
+	public static void recordParse(final long bytes, final long nanos) {
+		PARSE_COUNT.incrementAndGet();
+		PARSE_BYTES.addAndGet(bytes);
+		PARSE_NANOS.addAndGet(nanos);
+	}
+
+	public static long getParseCount() {
+		return PARSE_COUNT.get();
+	}
+
+	public static long getParseBytes() {
+		return PARSE_BYTES.get();
+	}
+
+	public static long getParseMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(PARSE_NANOS.get());
+	}
+
+	/**
+	 * @return a one line summary of the parse counters
+	 */
+	public static String getStats() {
+		return "parses=" + getParseCount() + ", bytes=" + getParseBytes() + ", millis=" + getParseMillis();
 	}
 
 	/*
@@ -355,6 +442,179 @@ public class XmlTool {
 		return l;
 	}
 
+	/*
+	 * STREAMING
+	 */
+
+	/**
+	 * Read the text content of the current element, the stream equivalent of
+	 * Node.getTextContent(). The reader must be positioned on a START_ELEMENT
+	 * and is left on the matching END_ELEMENT. Text of any nested elements is
+	 * included.
+	 * 
+	 * @param reader
+	 * @return the text content, never NULL
+	 * @throws XMLStreamException
+	 */
+	public static String getElementText(final XMLStreamReader reader) throws XMLStreamException {
+		String first = null;
+		StringBuilder text = null;
+		int depth = 1;
+		while (depth > 0) {
+			switch (reader.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				depth++;
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				depth--;
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+			case XMLStreamConstants.ENTITY_REFERENCE:
+				// most elements are a single text event so avoid the builder
+				if (first == null) {
+					first = reader.getText();
+				} else {
+					if (text == null) {
+						text = new StringBuilder(first);
+					}
+					text.append(reader.getText());
+				}
+				break;
+			default:
+				break;
+			}
+		}
+		if (text != null) {
+			return text.toString();
+		}
+		return (first != null) ? first : EMPTY;
+	}
+
+	/**
+	 * Skip the remainder of the current element without reading it. The
+	 * reader must be inside (or on the START_ELEMENT of) the element and is
+	 * left on its END_ELEMENT.
+	 * 
+	 * @param reader
+	 * @param depth
+	 *            the nesting depth of the reader within the element to skip; 1
+	 *            if positioned on its START_ELEMENT or a direct child's
+	 *            END_ELEMENT
+	 * @throws XMLStreamException
+	 */
+	public static void skipElement(final XMLStreamReader reader, int depth) throws XMLStreamException {
+		while (depth > 0) {
+			switch (reader.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				depth++;
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				depth--;
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Parsers holds the shared, pre-configured factories. It is only loaded on
+	 * first use so useInternalDocumentBuilderFactory() still applies if called
+	 * before then.
+	 * <p>
+	 * Neither factory allows a DTD or external entities.
+	 */
+	private static class Parsers {
+
+		static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY = newDocumentBuilderFactory();
+
+		/**
+		 * DocumentBuilder isn't thread safe so each thread gets its own.
+		 */
+		static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDER = ThreadLocal.withInitial(() -> {
+			try {
+				return DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+			} catch (final ParserConfigurationException e) {
+				throw new RuntimeException("Unable to create DocumentBuilder, " + e, e);
+			}
+		});
+
+		static final ThreadLocal<XMLInputFactory> XML_INPUT_FACTORY = ThreadLocal
+				.withInitial(Parsers::newXMLInputFactory);
+
+		private static DocumentBuilderFactory newDocumentBuilderFactory() {
+			final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+			factory.setXIncludeAware(false);
+			factory.setExpandEntityReferences(false);
+			setFeature(factory, XMLConstants.FEATURE_SECURE_PROCESSING, true);
+			setFeature(factory, "http://apache.org/xml/features/disallow-doctype-decl", true);
+			setFeature(factory, "http://xml.org/sax/features/external-general-entities", false);
+			setFeature(factory, "http://xml.org/sax/features/external-parameter-entities", false);
+			setFeature(factory, "http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+			return factory;
+		}
+
+		private static void setFeature(final DocumentBuilderFactory factory, final String feature,
+				final boolean value) {
+			try {
+				factory.setFeature(feature, value);
+			} catch (final ParserConfigurationException e) {
+				log.config("XmlTool feature not supported, " + feature + "; factory=" + factory);
+			}
+		}
+
+		private static XMLInputFactory newXMLInputFactory() {
+			final XMLInputFactory factory = XMLInputFactory.newInstance();
+			factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+			factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+			factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+			return factory;
+		}
+	}
+
+	/**
+	 * CountingInputStream counts the bytes read through it.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+
+		private long count = 0;
+
+		CountingInputStream(final InputStream in) {
+			super(in);
+		}
+
+		long getCount() {
+			return this.count;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int b = super.read();
+			if (b >= 0) {
+				this.count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			final int n = super.read(b, off, len);
+			if (n > 0) {
+				this.count += n;
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(final long n) throws IOException {
+			final long skipped = super.skip(n);
+			this.count += skipped;
+			return skipped;
+		}
+	}
+
 	/**
 	 * ElementList
 	 * 